@@ -0,0 +1,197 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.AbstractToString;
+import com.stormmq.string.FieldSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AbstractToStringBenchmark
+{
+	@SuppressWarnings("MagicNumber") private final Example example = new Example("name", 42, 1_234_567_890_123L, new int[]{1, 2, 3});
+
+	@SuppressWarnings("MagicNumber") private final FieldSinkExample fieldSinkExample = new FieldSinkExample("name", 42, 1_234_567_890_123L, new int[]{1, 2, 3});
+
+	@SuppressWarnings("MagicNumber") private final FieldSinkExample nestedExample = new FieldSinkExample("outer", 1, 2L, new int[0], new FieldSinkExample("middle", 3, 4L, new int[0], fieldSinkExample));
+
+	// A cycle through a List: Parent renders its children, and each child renders its parent again; this must elide rather than overflow the stack
+	private final CycleParent cycleParent = new CycleParent();
+
+	private final StringBuilder stringBuilder = new StringBuilder(256);
+
+	@Benchmark
+	public String toStringAsTuple()
+	{
+		return AbstractToString.toStringAsTuple(example, example.name, example.count, example.total, example.values);
+	}
+
+	@Benchmark
+	public String abstractToString()
+	{
+		return example.toString();
+	}
+
+	@Benchmark
+	public String abstractToStringWithFieldSink()
+	{
+		return fieldSinkExample.toString();
+	}
+
+	@Benchmark
+	public StringBuilder appendToReusedStringBuilder()
+	{
+		stringBuilder.setLength(0);
+		fieldSinkExample.appendTo(stringBuilder);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public String nestedToString()
+	{
+		return nestedExample.toString();
+	}
+
+	@Benchmark
+	public String cycleThroughCollectionToString()
+	{
+		return cycleParent.toString();
+	}
+
+	@Benchmark
+	public String handWrittenStringBuilder()
+	{
+		return example.handWrittenToString();
+	}
+
+	private static final class Example extends AbstractToString
+	{
+		@NotNull private final String name;
+		private final int count;
+		private final long total;
+		@NotNull private final int[] values;
+
+		private Example(@NotNull final String name, final int count, final long total, @NotNull final int[] values)
+		{
+			this.name = name;
+			this.count = count;
+			this.total = total;
+			this.values = values;
+		}
+
+		@NotNull
+		@Override
+		protected Object[] fields()
+		{
+			return fields(name, count, total, values);
+		}
+
+		@NotNull
+		private String handWrittenToString()
+		{
+			return new StringBuilder(64).append("Example(").append(name).append(", ").append(count).append(", ").append(total).append(", ").append(Arrays.toString(values)).append(')').toString();
+		}
+	}
+
+	private static final class FieldSinkExample extends AbstractToString
+	{
+		@NotNull private final String name;
+		private final int count;
+		private final long total;
+		@NotNull private final int[] values;
+		@Nullable private final FieldSinkExample child;
+
+		private FieldSinkExample(@NotNull final String name, final int count, final long total, @NotNull final int[] values)
+		{
+			this(name, count, total, values, null);
+		}
+
+		private FieldSinkExample(@NotNull final String name, final int count, final long total, @NotNull final int[] values, @Nullable final FieldSinkExample child)
+		{
+			this.name = name;
+			this.count = count;
+			this.total = total;
+			this.values = values;
+			this.child = child;
+		}
+
+		@Override
+		protected void appendFields(@NotNull final FieldSink fieldSink)
+		{
+			fieldSink.field(name).field(count).field(total).field(values);
+			if (child != null)
+			{
+				fieldSink.field(child);
+			}
+		}
+	}
+
+	private static final class CycleParent extends AbstractToString
+	{
+		@NotNull private final List<CycleChild> children;
+
+		private CycleParent()
+		{
+			children = new ArrayList<>(2);
+			children.add(new CycleChild(this));
+			children.add(new CycleChild(this));
+		}
+
+		@NotNull
+		@Override
+		protected Object[] fields()
+		{
+			return fields(children);
+		}
+	}
+
+	private static final class CycleChild extends AbstractToString
+	{
+		@NotNull private final CycleParent parent;
+
+		private CycleChild(@NotNull final CycleParent parent)
+		{
+			this.parent = parent;
+		}
+
+		@NotNull
+		@Override
+		protected Object[] fields()
+		{
+			return fields(parent);
+		}
+	}
+}
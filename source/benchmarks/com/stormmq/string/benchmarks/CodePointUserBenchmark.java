@@ -0,0 +1,134 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.CodePointUser;
+import com.stormmq.string.CodePoints;
+import com.stormmq.string.InvalidUtf16StringException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.CharBuffer;
+
+import static com.stormmq.string.MalformedInputPolicy.Replace;
+import static com.stormmq.string.MalformedInputUser.ignoreMalformedInput;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodePointUserBenchmark
+{
+	private static final int MalformedInterval = 16;
+
+	private static final char LoneSurrogate = '\uDC00';
+
+	@Param({"Ascii", "Latin1", "Cjk", "Emoji"}) public Payload payload;
+
+	@Param({"16", "1024", "65536"}) public int length;
+
+	private String value;
+
+	private String malformedValue;
+
+	private char[] characters;
+
+	private CharBuffer charBuffer;
+
+	@Setup
+	public void setUp()
+	{
+		value = payload.generate(length);
+		final StringBuilder malformed = new StringBuilder(value);
+		for (int index = 0; index < malformed.length(); index += MalformedInterval)
+		{
+			malformed.setCharAt(index, LoneSurrogate);
+		}
+		malformedValue = malformed.toString();
+		characters = value.toCharArray();
+		charBuffer = CharBuffer.wrap(characters);
+	}
+
+	@Benchmark
+	public int iterateOverStringCodePoints() throws InvalidUtf16StringException
+	{
+		final SummingCodePointUser summingCodePointUser = new SummingCodePointUser();
+		summingCodePointUser.iterateOverStringCodePoints(value);
+		return summingCodePointUser.sum;
+	}
+
+	@Benchmark
+	public int iterateOverMalformedStringCodePointsReplacing() throws InvalidUtf16StringException
+	{
+		final SummingCodePointUser summingCodePointUser = new SummingCodePointUser();
+		summingCodePointUser.iterateOverStringCodePoints(malformedValue, Replace, ignoreMalformedInput());
+		return summingCodePointUser.sum;
+	}
+
+	@Benchmark
+	public int iterateOverCharArrayCodePoints() throws InvalidUtf16StringException
+	{
+		final SummingCodePointUser summingCodePointUser = new SummingCodePointUser();
+		summingCodePointUser.iterateOverCodePoints(characters, 0, characters.length);
+		return summingCodePointUser.sum;
+	}
+
+	@Benchmark
+	public int iterateOverCharBufferCodePoints() throws InvalidUtf16StringException
+	{
+		final SummingCodePointUser summingCodePointUser = new SummingCodePointUser();
+		summingCodePointUser.iterateOverStringCodePoints(charBuffer);
+		return summingCodePointUser.sum;
+	}
+
+	@Benchmark
+	public int sequentialCodePointStream()
+	{
+		return CodePoints.codePoints(value, false).sum();
+	}
+
+	@Benchmark
+	public int parallelCodePointStream()
+	{
+		return CodePoints.codePoints(value, true).sum();
+	}
+
+	@Benchmark
+	public int jdkCodePoints()
+	{
+		return value.codePoints().sum();
+	}
+
+	private static final class SummingCodePointUser implements CodePointUser<RuntimeException>
+	{
+		private int sum;
+
+		@Override
+		public void useCodePoint(final int index, final int codePoint)
+		{
+			sum += codePoint;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.Formatting;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimalFormattingBenchmark
+{
+	@Param({"0.1", "1234.5678", "3.141592653589793", "6.02214076E23", "4.9E-324"}) public double doubleValue;
+
+	@Param({"3"}) public int precision;
+
+	private float floatValue;
+
+	private String fixedTemplate;
+
+	private final StringBuilder stringBuilder = new StringBuilder(64);
+
+	private final char[] chars = new char[Formatting.MaximumShortestDecimalLength];
+
+	private final byte[] bytes = new byte[Formatting.MaximumShortestDecimalLength];
+
+	@Setup
+	public void setUp()
+	{
+		floatValue = (float) doubleValue;
+		fixedTemplate = "%." + precision + 'f';
+	}
+
+	@Benchmark
+	public StringBuilder appendShortestDecimalDouble()
+	{
+		stringBuilder.setLength(0);
+		Formatting.appendShortestDecimal(stringBuilder, doubleValue);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public int writeShortestDecimalDoubleChars()
+	{
+		return Formatting.writeShortestDecimal(chars, 0, doubleValue);
+	}
+
+	@Benchmark
+	public int writeShortestDecimalDoubleBytes()
+	{
+		return Formatting.writeShortestDecimal(bytes, 0, doubleValue);
+	}
+
+	@Benchmark
+	public String jdkDoubleToString()
+	{
+		return Double.toString(doubleValue);
+	}
+
+	@Benchmark
+	public StringBuilder jdkStringBuilderAppendDouble()
+	{
+		stringBuilder.setLength(0);
+		return stringBuilder.append(doubleValue);
+	}
+
+	@Benchmark
+	public int writeShortestDecimalFloatBytes()
+	{
+		return Formatting.writeShortestDecimal(bytes, 0, floatValue);
+	}
+
+	@Benchmark
+	public String jdkFloatToString()
+	{
+		return Float.toString(floatValue);
+	}
+
+	@Benchmark
+	public StringBuilder appendFixedDecimal()
+	{
+		stringBuilder.setLength(0);
+		Formatting.appendFixedDecimal(stringBuilder, doubleValue, precision);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public String jdkStringFormatFixed()
+	{
+		return String.format(fixedTemplate, doubleValue);
+	}
+}
@@ -0,0 +1,71 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.DescriptorUser;
+import com.stormmq.string.MethodDescriptor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorBenchmark
+{
+	@Param({"()V", "(ILjava/lang/String;[JLjava/util/Map;)Ljava/lang/Object;"}) public String descriptor;
+
+	@Benchmark
+	public int parseWithVisitor(final Blackhole blackhole)
+	{
+		return new DescriptorUser<RuntimeException>()
+		{
+			@Override
+			public void usePrimitiveType(final int arrayDimensions, final char typeCode)
+			{
+				blackhole.consume(typeCode);
+			}
+
+			@Override
+			public void useClassType(final int arrayDimensions, final int startIndex, final int endIndex)
+			{
+				blackhole.consume(endIndex - startIndex);
+			}
+		}.parseMethodDescriptor(descriptor);
+	}
+
+	@Benchmark
+	public MethodDescriptor parse()
+	{
+		return MethodDescriptor.parseMethodDescriptor(descriptor);
+	}
+
+	@Benchmark
+	public MethodDescriptor cached()
+	{
+		return MethodDescriptor.methodDescriptor(descriptor);
+	}
+}
@@ -0,0 +1,138 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.CompiledTemplate;
+import com.stormmq.string.Formatting;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark
+{
+	private static final CompiledTemplate Template = CompiledTemplate.compile("%1$s at index '%2$s' is 0x%3$08X");
+
+	private final StringBuilder stringBuilder = new StringBuilder(64);
+
+	private final byte[] bytes = new byte[16];
+
+	@SuppressWarnings("MagicNumber") public byte byteValue = (byte) 0xA5;
+	@SuppressWarnings("MagicNumber") public short shortValue = (short) 0xBEEF;
+	@SuppressWarnings("MagicNumber") public char charValue = '\u20AC';
+	@SuppressWarnings("MagicNumber") public int intValue = 0xCAFE_BABE;
+	@SuppressWarnings("MagicNumber") public long longValue = 0xDEAD_BEEF_CAFE_BABEL;
+	public String stringValue = "value";
+
+	@Benchmark
+	public String zeroPaddedUpperCaseHexStringByte()
+	{
+		return Formatting.zeroPaddedUpperCaseHexString(byteValue);
+	}
+
+	@Benchmark
+	public String zeroPaddedUpperCaseHexStringShort()
+	{
+		return Formatting.zeroPaddedUpperCaseHexString(shortValue);
+	}
+
+	@Benchmark
+	public String zeroPaddedUpperCaseHexStringChar()
+	{
+		return Formatting.zeroPaddedUpperCaseHexString(charValue);
+	}
+
+	@Benchmark
+	public String zeroPaddedUpperCaseHexStringInt()
+	{
+		return Formatting.zeroPaddedUpperCaseHexString(intValue);
+	}
+
+	@Benchmark
+	public String zeroPaddedUpperCaseHexStringLong()
+	{
+		return Formatting.zeroPaddedUpperCaseHexString(longValue);
+	}
+
+	@Benchmark
+	public StringBuilder appendZeroPaddedUpperCaseHexLong()
+	{
+		stringBuilder.setLength(0);
+		Formatting.appendZeroPaddedUpperCaseHex(stringBuilder, longValue);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public int writeZeroPaddedUpperCaseHexLong()
+	{
+		return Formatting.writeZeroPaddedUpperCaseHex(bytes, 0, longValue);
+	}
+
+	@Benchmark
+	public String jdkStringFormatHexInt()
+	{
+		return String.format("%08X", intValue);
+	}
+
+	@Benchmark
+	public String jdkToHexStringInt()
+	{
+		return Integer.toHexString(intValue);
+	}
+
+	@Benchmark
+	public String format()
+	{
+		return Formatting.format("%1$s at index '%2$s' is 0x%3$08X", stringValue, intValue, intValue);
+	}
+
+	@Benchmark
+	public String compiledTemplate()
+	{
+		return Template.format(stringValue, intValue, intValue);
+	}
+
+	@Benchmark
+	public StringBuilder compiledTemplateIntoStringBuilder()
+	{
+		stringBuilder.setLength(0);
+		return Template.render(stringBuilder, stringValue, intValue, intValue);
+	}
+
+	@Benchmark
+	public String jdkStringFormat()
+	{
+		return String.format("%1$s at index '%2$s' is 0x%3$08X", stringValue, intValue, intValue);
+	}
+
+	@Benchmark
+	public String jdkStringConcatenation()
+	{
+		return stringValue + " at index '" + intValue + "' is 0x" + Integer.toHexString(intValue).toUpperCase();
+	}
+}
@@ -0,0 +1,65 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.InvalidUtf16StringException;
+import com.stormmq.string.Utf8ByteUser;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// Compare with Utf8EncodingBenchmark, which runs with instrumentation disabled
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.stormmq.string.instrumentation=true")
+public class InstrumentationBenchmark
+{
+	@Param({"Ascii", "Cjk"}) public Payload payload;
+
+	@Param({"16", "1024"}) public int length;
+
+	private String value;
+
+	private byte[] destination;
+
+	@Setup
+	public void setUp()
+	{
+		value = payload.generate(length);
+		destination = new byte[Utf8ByteUser.maximumUtf16ToUtf8EncodingSize(value)];
+	}
+
+	@Benchmark
+	public byte[] instrumentedEncodeToUtf8ByteArray() throws InvalidUtf16StringException
+	{
+		return Utf8ByteUser.encodeToUtf8ByteArray(value);
+	}
+
+	@Benchmark
+	public int instrumentedEncodeInto() throws InvalidUtf16StringException
+	{
+		return Utf8ByteUser.encodeInto(value, destination, 0);
+	}
+}
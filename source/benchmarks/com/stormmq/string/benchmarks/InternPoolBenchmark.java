@@ -0,0 +1,84 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.InternPool;
+import com.stormmq.string.InvalidUtf8StringException;
+import com.stormmq.string.StringUtilities;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InternPoolBenchmark
+{
+	private static final char Delimiter = ',';
+
+	@Param({"Ascii", "Cjk"}) public Payload payload;
+
+	@Param({"16"}) public int fieldLength;
+
+	@SuppressWarnings("MagicNumber") private final InternPool internPool = new InternPool(4096);
+
+	private String line;
+
+	private byte[] utf8Line;
+
+	@Setup
+	public void setUp()
+	{
+		final String field = payload.generate(fieldLength);
+		line = field + Delimiter + field + Delimiter + field + Delimiter + field;
+		utf8Line = line.getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public void splitAndInternSlices(final Blackhole blackhole)
+	{
+		StringUtilities.splitIntoTokens(line, Delimiter, (startIndex, endIndex) -> blackhole.consume(internPool.intern(line, startIndex, endIndex)));
+	}
+
+	@Benchmark
+	public void splitAndInternUtf8Slices(final Blackhole blackhole) throws InvalidUtf8StringException
+	{
+		StringUtilities.<InvalidUtf8StringException>splitIntoTokens(utf8Line, 0, utf8Line.length, (byte) Delimiter, (startIndex, endIndex) -> blackhole.consume(internPool.internUtf8(utf8Line, startIndex, endIndex - startIndex)));
+	}
+
+	@Benchmark
+	public void splitAndSubstring(final Blackhole blackhole)
+	{
+		StringUtilities.split(line, Delimiter, blackhole::consume);
+	}
+
+	@Benchmark
+	public void splitAndJdkIntern(final Blackhole blackhole)
+	{
+		StringUtilities.split(line, Delimiter, token -> blackhole.consume(token.intern()));
+	}
+}
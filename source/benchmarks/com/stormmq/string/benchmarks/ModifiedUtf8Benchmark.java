@@ -0,0 +1,106 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.InvalidUtf8StringException;
+import com.stormmq.string.ModifiedUtf8Decoder;
+import com.stormmq.string.Utf8ByteUser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModifiedUtf8Benchmark
+{
+	@Param({"Ascii", "Latin1", "Cjk", "Emoji"}) public Payload payload;
+
+	// At most 16384 so that every payload fits within DataOutput.writeUTF's limit
+	@Param({"16", "1024", "16384"}) public int length;
+
+	private String value;
+
+	private byte[] destination;
+
+	private byte[] encoded;
+
+	private byte[] lengthPrefixedEncoded;
+
+	private ByteArrayOutputStream byteArrayOutputStream;
+
+	private DataOutputStream dataOutputStream;
+
+	@Setup
+	public void setUp()
+	{
+		value = payload.generate(length);
+		destination = new byte[Utf8ByteUser.maximumUtf16ToUtf8EncodingSize(value)];
+		encoded = Utf8ByteUser.encodeToModifiedUtf8ByteArray(value);
+		lengthPrefixedEncoded = Utf8ByteUser.encodeToLengthPrefixedModifiedUtf8ByteArray(value);
+		byteArrayOutputStream = new ByteArrayOutputStream(2 + destination.length);
+		dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+	}
+
+	@Benchmark
+	public byte[] encodeToLengthPrefixedModifiedUtf8ByteArray()
+	{
+		return Utf8ByteUser.encodeToLengthPrefixedModifiedUtf8ByteArray(value);
+	}
+
+	@Benchmark
+	public int encodeModifiedUtf8Into()
+	{
+		return Utf8ByteUser.encodeModifiedUtf8Into(value, 0, value.length(), destination, 0);
+	}
+
+	@Benchmark
+	public int modifiedUtf8Length()
+	{
+		return Utf8ByteUser.modifiedUtf8Length(value);
+	}
+
+	@Benchmark
+	public int jdkWriteUtf() throws IOException
+	{
+		byteArrayOutputStream.reset();
+		dataOutputStream.writeUTF(value);
+		return byteArrayOutputStream.size();
+	}
+
+	@Benchmark
+	public String decode() throws InvalidUtf8StringException
+	{
+		return ModifiedUtf8Decoder.decode(encoded, 0, encoded.length);
+	}
+
+	@Benchmark
+	public String jdkReadUtf() throws IOException
+	{
+		return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(lengthPrefixedEncoded)));
+	}
+}
@@ -0,0 +1,113 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.Padding;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaddingBenchmark
+{
+	@Param({"7", "123456"}) public int intValue;
+
+	@Param({"10"}) public int padding;
+
+	public long longValue = 1_234_567_890_123L;
+
+	private String unpadded;
+
+	private final StringBuilder stringBuilder = new StringBuilder(64);
+
+	private final byte[] bytes = new byte[64];
+
+	@Setup
+	public void setUp()
+	{
+		unpadded = Integer.toString(intValue);
+	}
+
+	@Benchmark
+	public String pad()
+	{
+		return Padding.pad(unpadded, padding);
+	}
+
+	@Benchmark
+	public String padAsDecimalInt()
+	{
+		return Padding.padAsDecimal(intValue, padding);
+	}
+
+	@Benchmark
+	public String padAsDecimalLong()
+	{
+		return Padding.padAsDecimal(longValue, padding + padding);
+	}
+
+	@Benchmark
+	public String padAsHexadecimalInt()
+	{
+		return Padding.padAsHexadecimal(intValue, padding);
+	}
+
+	@Benchmark
+	public String padAsHexadecimalLong()
+	{
+		return Padding.padAsHexadecimal(longValue, padding + padding);
+	}
+
+	@Benchmark
+	public StringBuilder appendPaddedDecimalInt()
+	{
+		stringBuilder.setLength(0);
+		Padding.appendPaddedDecimal(stringBuilder, intValue, padding);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public int writePaddedDecimalInt()
+	{
+		return Padding.writePaddedDecimal(bytes, 0, intValue, padding);
+	}
+
+	@Benchmark
+	public StringBuilder appendPaddedHexadecimalLong()
+	{
+		stringBuilder.setLength(0);
+		Padding.appendPaddedHexadecimal(stringBuilder, longValue, padding + padding);
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public String jdkStringFormatDecimal()
+	{
+		return String.format("%010d", intValue);
+	}
+}
@@ -0,0 +1,76 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+@SuppressWarnings("MagicNumber")
+public enum Payload
+{
+	Ascii(0x20, 0x7F, 0),
+	Latin1(0xA0, 0x100, 4),
+	Cjk(0x4E00, 0xA000, 16),
+	Emoji(0x1F300, 0x1F650, 8),
+	;
+
+	private static final long Seed = 0x5EED;
+
+	private final int inclusiveFirstCodePoint;
+	private final int exclusiveLastCodePoint;
+	private final int oneInHowManyIsAscii;
+
+	Payload(final int inclusiveFirstCodePoint, final int exclusiveLastCodePoint, final int oneInHowManyIsAscii)
+	{
+		this.inclusiveFirstCodePoint = inclusiveFirstCodePoint;
+		this.exclusiveLastCodePoint = exclusiveLastCodePoint;
+		this.oneInHowManyIsAscii = oneInHowManyIsAscii;
+	}
+
+	@NotNull
+	public String generate(final int length)
+	{
+		final Random random = new Random(Seed);
+		final StringBuilder stringBuilder = new StringBuilder(length + 1);
+		while (stringBuilder.length() < length)
+		{
+			final boolean isAscii = oneInHowManyIsAscii != 0 && random.nextInt(oneInHowManyIsAscii) == 0;
+			final int codePoint = isAscii ? Ascii.randomCodePoint(random) : randomCodePoint(random);
+			if (Character.charCount(codePoint) > length - stringBuilder.length())
+			{
+				stringBuilder.append(' ');
+			}
+			else
+			{
+				stringBuilder.appendCodePoint(codePoint);
+			}
+		}
+		return stringBuilder.toString();
+	}
+
+	private int randomCodePoint(@NotNull final Random random)
+	{
+		return inclusiveFirstCodePoint + random.nextInt(exclusiveLastCodePoint - inclusiveFirstCodePoint);
+	}
+}
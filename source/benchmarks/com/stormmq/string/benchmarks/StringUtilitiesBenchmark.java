@@ -0,0 +1,99 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.StringUtilities;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilitiesBenchmark
+{
+	private static final char Delimiter = '\u0001';
+	private static final String DelimiterString = String.valueOf(Delimiter);
+
+	@Param({"Ascii", "Latin1", "Cjk", "Emoji"}) public Payload payload;
+
+	@Param({"8", "64"}) public int fieldLength;
+
+	@Param({"16"}) public int numberOfFields;
+
+	private String value;
+
+	private byte[] utf8Value;
+
+	@Setup
+	public void setUp()
+	{
+		final String field = payload.generate(fieldLength);
+		final StringBuilder stringBuilder = new StringBuilder((fieldLength + 1) * numberOfFields);
+		for (int index = 0; index < numberOfFields; index++)
+		{
+			if (index != 0)
+			{
+				stringBuilder.append(Delimiter);
+			}
+			stringBuilder.append(field);
+		}
+		value = stringBuilder.toString();
+		utf8Value = value.getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public void split(final Blackhole blackhole)
+	{
+		StringUtilities.split(value, Delimiter, blackhole::consume);
+	}
+
+	@Benchmark
+	public void splitIntoTokens(final Blackhole blackhole)
+	{
+		StringUtilities.splitIntoTokens(value, Delimiter, (startIndex, endIndex) -> blackhole.consume(endIndex - startIndex));
+	}
+
+	@Benchmark
+	public void splitIntoViews(final Blackhole blackhole)
+	{
+		StringUtilities.splitIntoViews(value, Delimiter, blackhole::consume);
+	}
+
+	@Benchmark
+	public void splitUtf8IntoTokens(final Blackhole blackhole)
+	{
+		StringUtilities.splitIntoTokens(utf8Value, 0, utf8Value.length, (byte) Delimiter, (startIndex, endIndex) -> blackhole.consume(endIndex - startIndex));
+	}
+
+	@Benchmark
+	public String[] jdkSplit()
+	{
+		return value.split(DelimiterString);
+	}
+}
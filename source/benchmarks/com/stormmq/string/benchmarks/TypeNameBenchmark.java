@@ -0,0 +1,69 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.TypeName;
+import org.openjdk.jmh.annotations.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeNameBenchmark
+{
+	@Param({"java/lang/String", "com/stormmq/string/benchmarks/TypeNameBenchmark"}) public String internalTypeName;
+
+	private byte[] utf8;
+
+	private byte[] destination;
+
+	@Setup
+	public void setUp()
+	{
+		utf8 = internalTypeName.getBytes(UTF_8);
+		destination = new byte[utf8.length];
+	}
+
+	@Benchmark
+	public String jdkReplace()
+	{
+		return internalTypeName.replace('/', '.');
+	}
+
+	@Benchmark
+	public TypeName cached()
+	{
+		return TypeName.internalTypeName(internalTypeName);
+	}
+
+	@Benchmark
+	public byte[] utf8IntoBuffer()
+	{
+		TypeName.internalToExternal(utf8, 0, utf8.length, destination, 0);
+		return destination;
+	}
+}
@@ -0,0 +1,135 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.DirectSlabPool;
+import com.stormmq.string.DirectUtf8Arena;
+import com.stormmq.string.InvalidUtf16StringException;
+import com.stormmq.string.Utf8ByteUser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8EncodingBenchmark
+{
+	private static final int SlabSize = 64 * 1024;
+
+	private static final int MaximumPooledSlabs = 16;
+
+	@Param({"Ascii", "Latin1", "Cjk", "Emoji"}) public Payload payload;
+
+	@Param({"16", "1024", "65536"}) public int length;
+
+	private String value;
+
+	private byte[] destination;
+
+	private ByteBuffer directDestination;
+
+	private DirectUtf8Arena directUtf8Arena;
+
+	@Setup
+	public void setUp()
+	{
+		value = payload.generate(length);
+		destination = new byte[Utf8ByteUser.maximumUtf16ToUtf8EncodingSize(value)];
+		directDestination = allocateDirect(destination.length);
+		directUtf8Arena = new DirectUtf8Arena(new DirectSlabPool(SlabSize, MaximumPooledSlabs));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		directUtf8Arena.close();
+	}
+
+	@Benchmark
+	public byte[] encodeToUtf8ByteArray() throws InvalidUtf16StringException
+	{
+		return Utf8ByteUser.encodeToUtf8ByteArray(value);
+	}
+
+	@Benchmark
+	public int encodeInto() throws InvalidUtf16StringException
+	{
+		return Utf8ByteUser.encodeInto(value, destination, 0);
+	}
+
+	@Benchmark
+	public int encodeIntoDirectByteBuffer() throws InvalidUtf16StringException
+	{
+		directDestination.clear();
+		return Utf8ByteUser.encodeInto(value, directDestination);
+	}
+
+	@Benchmark
+	public int encodeToUtf8ByteArrayThenCopyToDirectByteBuffer() throws InvalidUtf16StringException
+	{
+		directDestination.clear();
+		directDestination.put(Utf8ByteUser.encodeToUtf8ByteArray(value));
+		return directDestination.position();
+	}
+
+	@Benchmark
+	public long encodeIntoDirectUtf8Arena() throws InvalidUtf16StringException
+	{
+		directUtf8Arena.clear();
+		directUtf8Arena.encode(value);
+		return directUtf8Arena.size();
+	}
+
+	@Benchmark
+	public int encodeUtf8BytesCallback() throws InvalidUtf16StringException
+	{
+		final XorUtf8ByteUser xorUtf8ByteUser = new XorUtf8ByteUser();
+		xorUtf8ByteUser.encodeUtf8Bytes(value);
+		return xorUtf8ByteUser.xor;
+	}
+
+	@Benchmark
+	public byte[] jdkGetBytes()
+	{
+		return value.getBytes(UTF_8);
+	}
+
+	private static final class XorUtf8ByteUser implements Utf8ByteUser<RuntimeException>
+	{
+		private int xor;
+
+		@Override
+		public void useUnsignedByte(final int byteIndex, final int sequenceLength, final int utf8Byte)
+		{
+			xor ^= utf8Byte;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.InvalidUtf16StringException;
+import com.stormmq.string.Utf8ByteUser;
+import org.openjdk.jmh.annotations.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8LengthBenchmark
+{
+	@Param({"Ascii", "Latin1", "Cjk", "Emoji"}) public Payload payload;
+
+	@Param({"16", "1024", "65536"}) public int length;
+
+	private String value;
+
+	@Setup
+	public void setUp()
+	{
+		value = payload.generate(length);
+	}
+
+	@Benchmark
+	public int utf8Length() throws InvalidUtf16StringException
+	{
+		return Utf8ByteUser.utf8Length(value);
+	}
+
+	// How utf8Length used to count: one callback per encoded byte
+	@Benchmark
+	public int perByteCallbackCounter() throws InvalidUtf16StringException
+	{
+		final CountingUtf8ByteUser counter = new CountingUtf8ByteUser();
+		counter.encodeUtf8Bytes(value);
+		return counter.count;
+	}
+
+	@Benchmark
+	public int maximumUtf16ToUtf8EncodingSize()
+	{
+		return Utf8ByteUser.maximumUtf16ToUtf8EncodingSize(value);
+	}
+
+	@Benchmark
+	public int jdkGetBytesLength()
+	{
+		return value.getBytes(UTF_8).length;
+	}
+
+	private static final class CountingUtf8ByteUser implements Utf8ByteUser<RuntimeException>
+	{
+		private int count;
+
+		@Override
+		public void useUnsignedByte(final int byteIndex, final int sequenceLength, final int utf8Byte)
+		{
+			count++;
+		}
+	}
+}
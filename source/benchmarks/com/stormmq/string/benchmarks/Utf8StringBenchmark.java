@@ -0,0 +1,96 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string.benchmarks;
+
+import com.stormmq.string.InvalidUtf16StringException;
+import com.stormmq.string.Utf8String;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8StringBenchmark
+{
+	@Param({"Ascii", "Cjk"}) public Payload payload;
+
+	@Param({"16", "1024"}) public int length;
+
+	private String value;
+
+	private Utf8String utf8String;
+
+	private Utf8String equalUtf8String;
+
+	private ByteBuffer destination;
+
+	@Setup
+	public void setUp() throws InvalidUtf16StringException
+	{
+		value = payload.generate(length);
+		utf8String = Utf8String.utf8String(value);
+		equalUtf8String = Utf8String.utf8String(new StringBuilder(value));
+		destination = allocateDirect(utf8String.utf8Length());
+	}
+
+	@Benchmark
+	public boolean utf8StringEquals()
+	{
+		return utf8String.equals(equalUtf8String);
+	}
+
+	@Benchmark
+	public int utf8StringCharAt()
+	{
+		int sum = 0;
+		final int length = utf8String.length();
+		for (int index = 0; index < length; index++)
+		{
+			sum += utf8String.charAt(index);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int writeUtf8String()
+	{
+		destination.clear();
+		utf8String.writeTo(destination);
+		return destination.position();
+	}
+
+	@Benchmark
+	public int jdkWriteString()
+	{
+		destination.clear();
+		destination.put(value.getBytes(UTF_8));
+		return destination.position();
+	}
+}
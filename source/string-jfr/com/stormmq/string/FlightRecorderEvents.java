@@ -0,0 +1,73 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+
+// Compiled separately from the string module, as jdk.jfr needs JDK 8u262 or later; Instrumentation only loads it, reflectively, once events are wanted
+final class FlightRecorderEvents implements InstrumentationEvents
+{
+	// Instantiated reflectively by Instrumentation
+	FlightRecorderEvents()
+	{
+	}
+
+	@Override
+	@NotNull
+	public Object begin()
+	{
+		final StringOperationEvent event = new StringOperationEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void end(@NotNull final Object event, @NotNull final InstrumentedOperation instrumentedOperation, final long inputLength, final long outputLength, final int malformedInputs)
+	{
+		final StringOperationEvent stringOperationEvent = (StringOperationEvent) event;
+		stringOperationEvent.end();
+		if (stringOperationEvent.shouldCommit())
+		{
+			stringOperationEvent.operation = instrumentedOperation.name();
+			stringOperationEvent.inputLength = inputLength;
+			stringOperationEvent.outputLength = outputLength;
+			stringOperationEvent.malformedInputs = malformedInputs;
+			stringOperationEvent.commit();
+		}
+	}
+
+	// Thresholded so that only slow operations are recorded by default; the threshold can be changed in a recording's settings
+	@Name("com.stormmq.string.StringOperation")
+	@Label("String Operation")
+	@Category({"StormMQ", "String"})
+	@Description("UTF-8 or Modified UTF-8 encoding, formatting or toString()")
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static final class StringOperationEvent extends Event
+	{
+		@Label("Operation") String operation;
+		@Label("Input Length") long inputLength;
+		@Label("Output Length") long outputLength;
+		@Label("Malformed Inputs") int malformedInputs;
+	}
+}
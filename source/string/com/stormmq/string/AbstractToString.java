@@ -24,69 +24,67 @@ package com.stormmq.string;
 
 import org.jetbrains.annotations.*;
 
-import java.util.*;
-import java.util.function.Function;
-
-import static com.stormmq.string.StringConstants.*;
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.Instrumentation.Enabled;
+import static com.stormmq.string.Instrumentation.begin;
+import static com.stormmq.string.Instrumentation.end;
+import static com.stormmq.string.InstrumentedOperation.ToString;
+import static com.stormmq.string.LazyString.lazyString;
+import static com.stormmq.string.StringConstants._null;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.copyOf;
 import static java.util.Arrays.deepToString;
 
 public abstract class AbstractToString
 {
-	@NotNull private static final Map<Class<?>, Function<Object, String>> PrimitiveArrayFormatters = primitiveArrayFormatters();
+	private static final int Unlimited = Integer.MAX_VALUE;
+	@NonNls @NotNull private static final String Ellipsis = "...";
 
-	@NotNull
-	private static Map<Class<?>, Function<Object, String>> primitiveArrayFormatters()
+	// Shared by every rendering on a thread, so that a cycle through a collection, map or array (whose toString() calls back into AbstractToString) is caught as well as a direct one
+	@NotNull private static final ThreadLocal<RenderPath> RenderPaths = ThreadLocal.withInitial(RenderPath::new);
+
+	@NotNull private static final ClassValue<ClassMetadata> Metadata = new ClassValue<ClassMetadata>()
 	{
-		final Map<Class<?>, Function<Object, String>> primitiveArrayFormatters = new HashMap<>(8);
-		primitiveArrayFormatters.put(boolean.class, argument -> Arrays.toString((boolean[]) argument));
-		primitiveArrayFormatters.put(byte.class, argument -> Arrays.toString((byte[]) argument));
-		primitiveArrayFormatters.put(char.class, argument -> Arrays.toString((char[]) argument));
-		primitiveArrayFormatters.put(short.class, argument -> Arrays.toString((short[]) argument));
-		primitiveArrayFormatters.put(int.class, argument -> Arrays.toString((int[]) argument));
-		primitiveArrayFormatters.put(long.class, argument -> Arrays.toString((long[]) argument));
-		primitiveArrayFormatters.put(float.class, argument -> Arrays.toString((float[]) argument));
-		primitiveArrayFormatters.put(double.class, argument -> Arrays.toString((double[]) argument));
-		return primitiveArrayFormatters;
-	}
+		@Override
+		@NotNull
+		protected ClassMetadata computeValue(@NotNull final Class<?> type)
+		{
+			return new ClassMetadata(type.getSimpleName());
+		}
+	};
 
 	@SuppressWarnings("WeakerAccess")
 	@NotNull
 	public static String toStringAsTuple(@NotNull final Object instance, @NotNull final Object... arguments)
 	{
-		final StringBuilder stringBuilder = new StringBuilder(1024);
-		stringBuilder.append(instance.getClass().getSimpleName());
-		stringBuilder.append('(');
-		final int length = arguments.length;
-		for (int index = 0; index < length; index++)
+		final ClassMetadata metadata = Metadata.get(instance.getClass());
+		final RenderPath renderPath = RenderPaths.get();
+		if (!renderPath.enter(instance))
 		{
-			if (index != 0)
-			{
-				stringBuilder.append(", ");
-			}
-
-			@Nullable final Object argument = arguments[index];
-			final String value;
-			if (argument == null)
-			{
-				value = _null;
-			}
-			else
+			return metadata.elided();
+		}
+		try
+		{
+			final StringBuilder stringBuilder = metadata.startTuple();
+			final FieldSink fieldSink = new StringBuilderFieldSink(stringBuilder, renderPath, Unlimited);
+			for (final Object argument : arguments)
 			{
-				final Class<?> argumentClass = argument.getClass();
-				if (argumentClass.isArray())
-				{
-					final Class<?> componentType = argumentClass.getComponentType();
-					value = PrimitiveArrayFormatters.getOrDefault(componentType, argumentX -> deepToString((Object[]) argumentX)).apply(argument);
-				}
-				else
-				{
-					value = argument.toString();
-				}
+				fieldSink.field(argument);
 			}
-			stringBuilder.append(value);
+			return metadata.endTuple(stringBuilder);
 		}
-		stringBuilder.append(')');
-		return stringBuilder.toString();
+		finally
+		{
+			renderPath.exit();
+		}
+	}
+
+	// The arguments are rendered when the text is first needed, not when this is called
+	@NotNull
+	public static LazyString lazyToStringAsTuple(@NotNull final Object instance, @NotNull final Object... arguments)
+	{
+		return lazyString(() -> toStringAsTuple(instance, arguments));
 	}
 
 	protected AbstractToString()
@@ -109,11 +107,124 @@ public abstract class AbstractToString
 	@NonNls
 	public final String toString()
 	{
-		return toStringAsTuple(this, fields());
+		@Nullable final Object event = Enabled ? begin() : null;
+		final ClassMetadata metadata = Metadata.get(getClass());
+		final RenderPath renderPath = RenderPaths.get();
+		final String rendered;
+		if (renderPath.enter(this))
+		{
+			try
+			{
+				final StringBuilder stringBuilder = metadata.startTuple();
+				appendFields(new StringBuilderFieldSink(stringBuilder, renderPath, Unlimited));
+				rendered = metadata.endTuple(stringBuilder);
+			}
+			finally
+			{
+				renderPath.exit();
+			}
+		}
+		else
+		{
+			rendered = metadata.elided();
+		}
+		if (Enabled)
+		{
+			end(event, ToString, 0, rendered.length(), 0);
+		}
+		return rendered;
+	}
+
+	// A rendering longer than maximumLength is truncated and ends with '...'
+	@NotNull
+	@NonNls
+	public final String toString(final int maximumLength)
+	{
+		checkMaximumLength(maximumLength);
+		@Nullable final Object event = Enabled ? begin() : null;
+		final StringBuilder stringBuilder = new StringBuilder(min(Metadata.get(getClass()).sizeHint, maximumLength));
+		appendTo(stringBuilder, maximumLength);
+		if (Enabled)
+		{
+			end(event, ToString, 0, stringBuilder.length(), 0);
+		}
+		return stringBuilder.toString();
 	}
 
 	@NotNull
-	protected abstract Object[] fields();
+	public final LazyString lazyToString(final int maximumLength)
+	{
+		return lazyString(() -> toString(maximumLength));
+	}
+
+	// Nested AbstractToString fields are appended to the same StringBuilder rather than rendered to an intermediate String
+	public final void appendTo(@NotNull final StringBuilder stringBuilder)
+	{
+		appendTo(stringBuilder, Unlimited);
+	}
+
+	// Appends at most maximumLength chars; a rendering longer than that is truncated and ends with '...'
+	public final void appendTo(@NotNull final StringBuilder stringBuilder, final int maximumLength)
+	{
+		checkMaximumLength(maximumLength);
+		final int start = stringBuilder.length();
+		final int maximumEnd = (int) min((long) start + maximumLength, Unlimited);
+		stringBuilder.append(Metadata.get(getClass()).simpleName).append('(');
+		final RenderPath renderPath = RenderPaths.get();
+		if (renderPath.enter(this))
+		{
+			try
+			{
+				appendFields(new StringBuilderFieldSink(stringBuilder, renderPath, maximumEnd));
+			}
+			finally
+			{
+				renderPath.exit();
+			}
+		}
+		else
+		{
+			stringBuilder.append(Ellipsis);
+		}
+		stringBuilder.append(')');
+		if (stringBuilder.length() > maximumEnd)
+		{
+			final int ellipsisLength = Ellipsis.length();
+			if (maximumLength < ellipsisLength)
+			{
+				stringBuilder.setLength(maximumEnd);
+			}
+			else
+			{
+				stringBuilder.setLength(maximumEnd - ellipsisLength);
+				stringBuilder.append(Ellipsis);
+			}
+		}
+	}
+
+	private static void checkMaximumLength(final int maximumLength)
+	{
+		if (maximumLength < 0)
+		{
+			throw new IllegalArgumentException(format("maximumLength '%1$s' can not be negative", maximumLength));
+		}
+	}
+
+	// Subclasses override either this or appendFields(), which is the only caller
+	@NotNull
+	protected Object[] fields()
+	{
+		throw new UnsupportedOperationException(format("'%1$s' must override one of fields() or appendFields(FieldSink)", getClass().getName()));
+	}
+
+	// Override to append fields without allocating the Object[] (and boxing primitives) that fields() returns
+	protected void appendFields(@NotNull final FieldSink fieldSink)
+	{
+		for (final Object field : fields())
+		{
+			fieldSink.field(field);
+		}
+	}
 
 	@SuppressWarnings("OverloadedVarargsMethod")
 	@NotNull
@@ -121,4 +232,349 @@ public abstract class AbstractToString
 	{
 		return fields;
 	}
+
+	private static final class ClassMetadata
+	{
+		private static final int InitialSizeHint = 64;
+		private static final int MaximumSizeHint = 1024;
+
+		@NotNull @NonNls private final String simpleName;
+
+		// Benignly racy: a stale read only costs a StringBuilder resize
+		private int sizeHint;
+
+		private ClassMetadata(@NotNull @NonNls final String simpleName)
+		{
+			this.simpleName = simpleName;
+			sizeHint = InitialSizeHint;
+		}
+
+		@NotNull
+		private StringBuilder startTuple()
+		{
+			return new StringBuilder(sizeHint).append(simpleName).append('(');
+		}
+
+		@NotNull
+		private String endTuple(@NotNull final StringBuilder stringBuilder)
+		{
+			stringBuilder.append(')');
+			final int length = stringBuilder.length();
+			if (length > sizeHint)
+			{
+				sizeHint = min(max(length, sizeHint << 1), MaximumSizeHint);
+			}
+			return stringBuilder.toString();
+		}
+
+		@NotNull
+		private String elided()
+		{
+			return simpleName + '(' + Ellipsis + ')';
+		}
+	}
+
+	// The instances being rendered on this thread, outermost first; cycles and very deep graphs are elided as 'Name(...)' rather than overflowing the stack
+	private static final class RenderPath
+	{
+		private static final int MaximumDepth = 64;
+		private static final int InitialPathLength = 8;
+
+		@NotNull private Object[] path;
+		private int depth;
+
+		private RenderPath()
+		{
+			path = new Object[InitialPathLength];
+			depth = 0;
+		}
+
+		// Returns false, without entering, if instance is already being rendered or the graph is too deep; otherwise exit() must follow
+		private boolean enter(@NotNull final Object instance)
+		{
+			if (depth == MaximumDepth || isBeingRendered(instance))
+			{
+				return false;
+			}
+			if (depth == path.length)
+			{
+				path = copyOf(path, depth << 1);
+			}
+			path[depth++] = instance;
+			return true;
+		}
+
+		private void exit()
+		{
+			path[--depth] = null;
+		}
+
+		private boolean isBeingRendered(@NotNull final Object instance)
+		{
+			for (int index = 0; index < depth; index++)
+			{
+				if (path[index] == instance)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class StringBuilderFieldSink implements FieldSink
+	{
+		@NotNull private final StringBuilder stringBuilder;
+		@NotNull private final RenderPath renderPath;
+		private final int maximumEnd;
+		private boolean isFirst;
+
+		private StringBuilderFieldSink(@NotNull final StringBuilder stringBuilder, @NotNull final RenderPath renderPath, final int maximumEnd)
+		{
+			this.stringBuilder = stringBuilder;
+			this.renderPath = renderPath;
+			this.maximumEnd = maximumEnd;
+			isFirst = true;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(@Nullable final Object value)
+		{
+			if (!separate())
+			{
+				return this;
+			}
+			if (value == null)
+			{
+				stringBuilder.append(_null);
+			}
+			else if (value instanceof AbstractToString)
+			{
+				appendNested((AbstractToString) value);
+			}
+			else if (value.getClass().isArray())
+			{
+				appendArray(value);
+			}
+			else
+			{
+				stringBuilder.append(value.toString());
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final boolean value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final byte value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final char value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final short value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final int value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final long value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final float value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		@NotNull
+		@Override
+		public FieldSink field(final double value)
+		{
+			if (separate())
+			{
+				stringBuilder.append(value);
+			}
+			return this;
+		}
+
+		// Returns false once the maximum length has been reached, as any further fields would only be truncated
+		private boolean separate()
+		{
+			if (stringBuilder.length() >= maximumEnd)
+			{
+				return false;
+			}
+			if (isFirst)
+			{
+				isFirst = false;
+			}
+			else
+			{
+				stringBuilder.append(", ");
+			}
+			return true;
+		}
+
+		private void appendNested(@NotNull final AbstractToString value)
+		{
+			stringBuilder.append(Metadata.get(value.getClass()).simpleName).append('(');
+			if (!renderPath.enter(value))
+			{
+				stringBuilder.append(Ellipsis).append(')');
+				return;
+			}
+
+			final boolean wasFirst = isFirst;
+			isFirst = true;
+			try
+			{
+				value.appendFields(this);
+			}
+			finally
+			{
+				renderPath.exit();
+			}
+			isFirst = wasFirst;
+			stringBuilder.append(')');
+		}
+
+		// Appends exactly what Arrays.toString() would return for primitive arrays, without the intermediate String
+		@SuppressWarnings("OverlyComplexMethod")
+		private void appendArray(@NotNull final Object array)
+		{
+			if (array instanceof Object[])
+			{
+				stringBuilder.append(deepToString((Object[]) array));
+				return;
+			}
+
+			stringBuilder.append('[');
+			if (array instanceof int[])
+			{
+				final int[] values = (int[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof long[])
+			{
+				final long[] values = (long[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof byte[])
+			{
+				final byte[] values = (byte[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof char[])
+			{
+				final char[] values = (char[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof short[])
+			{
+				final short[] values = (short[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof boolean[])
+			{
+				final boolean[] values = (boolean[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else if (array instanceof float[])
+			{
+				final float[] values = (float[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			else
+			{
+				final double[] values = (double[]) array;
+				for (int index = 0; index < values.length; index++)
+				{
+					separateElement(index).append(values[index]);
+				}
+			}
+			stringBuilder.append(']');
+		}
+
+		@NotNull
+		private StringBuilder separateElement(final int index)
+		{
+			return index == 0 ? stringBuilder : stringBuilder.append(", ");
+		}
+	}
 }
@@ -0,0 +1,416 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.stormmq.string.ByteArrayUser.outputStreamByteArrayUser;
+import static com.stormmq.string.ByteArrayUser.writableByteChannelByteArrayUser;
+import static com.stormmq.string.Formatting.NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance;
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.Utf8ByteUser.encodeToUtf8ByteArrayWithCertaintyValueIsValid;
+import static java.lang.Math.max;
+import static java.lang.System.arraycopy;
+import static java.lang.System.lineSeparator;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+import static java.util.concurrent.locks.LockSupport.unpark;
+
+// Producers claim slots in a bounded multiple-producer, single-consumer ring (each slot carries a sequence number, as in Vyukov's bounded queue); one daemon thread batches published lines into a single write
+public final class AsynchronousLineWriter implements Closeable
+{
+	public static final int DefaultRingCapacity = 4096;
+	public static final int DefaultSlotCapacity = 256;
+	public static final int DefaultBatchCapacity = 64 * 1024;
+	public static final long DefaultFlushIntervalNanoseconds = MILLISECONDS.toNanos(10L);
+
+	@NotNull private static final byte[] NewLine = encodeToUtf8ByteArrayWithCertaintyValueIsValid(lineSeparator());
+	private static final int InitialFormattingCapacity = 256;
+	private static final int MaximumRetainedFormattingCapacity = 64 * 1024;
+	private static final long BlockedProducerParkNanoseconds = 10_000L;
+	private static final int Abandoned = -1;
+
+	@NotNull private static final ThreadLocal<StringBuilder> LineFormatting = ThreadLocal.withInitial(() -> new StringBuilder(InitialFormattingCapacity));
+
+	@NotNull
+	public static AsynchronousLineWriter asynchronousLineWriter(@NotNull final OutputStream outputStream, @NotNull final OverflowPolicy overflowPolicy)
+	{
+		return new AsynchronousLineWriter(outputStreamByteArrayUser(outputStream), outputStream, DefaultRingCapacity, DefaultSlotCapacity, DefaultBatchCapacity, DefaultFlushIntervalNanoseconds, overflowPolicy);
+	}
+
+	@NotNull
+	public static AsynchronousLineWriter asynchronousLineWriter(@NotNull final WritableByteChannel writableByteChannel, @NotNull final OverflowPolicy overflowPolicy)
+	{
+		return new AsynchronousLineWriter(writableByteChannelByteArrayUser(writableByteChannel), () -> {}, DefaultRingCapacity, DefaultSlotCapacity, DefaultBatchCapacity, DefaultFlushIntervalNanoseconds, overflowPolicy);
+	}
+
+	@NotNull private final ByteArrayUser<IOException> byteArrayUser;
+	@NotNull private final Flushable flushable;
+	private final int mask;
+	@NotNull private final AtomicLongArray sequences;
+	@NotNull private final byte[][] slots;
+	@NotNull private final byte[][] oversizedLines;
+	@NotNull private final int[] lengths;
+	@NotNull private final AtomicLong tail;
+	@NotNull private final byte[] batch;
+	// batchLength and batchLines are only used by the consumer thread
+	private int batchLength;
+	private int batchLines;
+	private final long flushIntervalNanoseconds;
+	@NotNull private final OverflowPolicy overflowPolicy;
+	@NotNull private final LongAdder droppedLines;
+	@NotNull private final Thread consumer;
+	private volatile boolean closed;
+	private volatile boolean consumerParked;
+	@Nullable private volatile IOException failure;
+
+	public AsynchronousLineWriter(@NotNull final ByteArrayUser<IOException> byteArrayUser, @NotNull final Flushable flushable, final int ringCapacity, final int slotCapacity, final int batchCapacity, final long flushIntervalNanoseconds, @NotNull final OverflowPolicy overflowPolicy)
+	{
+		if (ringCapacity < 2 || Integer.bitCount(ringCapacity) != 1)
+		{
+			throw new IllegalArgumentException(format("ringCapacity '%1$s' must be a power of two of at least two", ringCapacity));
+		}
+		if (batchCapacity < slotCapacity)
+		{
+			throw new IllegalArgumentException(format("batchCapacity '%1$s' must be at least slotCapacity '%2$s'", batchCapacity, slotCapacity));
+		}
+
+		this.byteArrayUser = byteArrayUser;
+		this.flushable = flushable;
+		mask = ringCapacity - 1;
+		sequences = new AtomicLongArray(ringCapacity);
+		slots = new byte[ringCapacity][slotCapacity];
+		oversizedLines = new byte[ringCapacity][];
+		lengths = new int[ringCapacity];
+		for (int index = 0; index < ringCapacity; index++)
+		{
+			sequences.set(index, index);
+		}
+		tail = new AtomicLong(0L);
+		batch = new byte[batchCapacity];
+		batchLength = 0;
+		batchLines = 0;
+		this.flushIntervalNanoseconds = flushIntervalNanoseconds;
+		this.overflowPolicy = overflowPolicy;
+		droppedLines = new LongAdder();
+		closed = false;
+		consumerParked = false;
+		failure = null;
+
+		consumer = new Thread(this::consume, "AsynchronousLineWriter");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	public long droppedLines()
+	{
+		return droppedLines.sum();
+	}
+
+	public boolean formatPrintLine(@NotNull final CompiledTemplate template, @NotNull @NonNls final Object... arguments) throws InvalidUtf16StringException
+	{
+		final StringBuilder stringBuilder = formatting();
+		return printLine(template.render(stringBuilder, arguments));
+	}
+
+	public boolean formatPrintLine(@NotNull @NonNls final String template, @NotNull @NonNls final Object... arguments) throws InvalidUtf16StringException
+	{
+		final StringBuilder stringBuilder = formatting();
+		try (final Formatter formatter = new Formatter(stringBuilder, NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance))
+		{
+			formatter.format(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance, template, arguments);
+		}
+		return printLine(stringBuilder);
+	}
+
+	// Returns false if the line was dropped under OverflowPolicy.Drop, or because an earlier write failed (close() then throws that failure); either way it is counted in droppedLines()
+	public boolean printLine(@NotNull @NonNls final CharSequence line) throws InvalidUtf16StringException
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Closed");
+		}
+		if (failure != null)
+		{
+			droppedLines.increment();
+			return false;
+		}
+
+		final int utf8Length = Utf8ByteUser.utf8Length(line);
+		final long sequence = claim();
+		if (sequence == -1L)
+		{
+			droppedLines.increment();
+			return false;
+		}
+
+		final int index = (int) sequence & mask;
+
+		// close() may have happened between the check above and claim(), after the consumer's last look at tail; the slot is published as abandoned so that a consumer still draining does not wait on it forever
+		if (closed)
+		{
+			oversizedLines[index] = null;
+			lengths[index] = Abandoned;
+			publish(index, sequence);
+			throw new IllegalStateException("Closed");
+		}
+
+		final byte[] slot = slots[index];
+		try
+		{
+			if (utf8Length <= slot.length)
+			{
+				Utf8ByteUser.encodeInto(line, slot, 0);
+				oversizedLines[index] = null;
+			}
+			else
+			{
+				oversizedLines[index] = Utf8ByteUser.encodeToUtf8ByteArray(line);
+			}
+		}
+		catch (final InvalidUtf16StringException e)
+		{
+			throw new IllegalStateException(StringConstants.Should_be_impossible, e);
+		}
+		finally
+		{
+			lengths[index] = utf8Length;
+			publish(index, sequence);
+		}
+		return true;
+	}
+
+	// A volatile rather than a lazy set, so that it can not be reordered with the read of consumerParked; the consumer sets consumerParked before re-checking for a published line, so one of the two always sees the other
+	private void publish(final int index, final long sequence)
+	{
+		sequences.set(index, sequence + 1L);
+		if (consumerParked)
+		{
+			unpark(consumer);
+		}
+	}
+
+	private long claim()
+	{
+		while (true)
+		{
+			final long sequence = tail.get();
+			final long available = sequences.get((int) sequence & mask) - sequence;
+			if (available == 0L)
+			{
+				if (tail.compareAndSet(sequence, sequence + 1L))
+				{
+					return sequence;
+				}
+			}
+			else if (available < 0L)
+			{
+				if (overflowPolicy == OverflowPolicy.Drop)
+				{
+					return -1L;
+				}
+				unpark(consumer);
+				parkNanos(BlockedProducerParkNanoseconds);
+				if (closed)
+				{
+					throw new IllegalStateException("Closed whilst blocked");
+				}
+			}
+		}
+	}
+
+	// Flushes when the batch fills or its oldest line has waited flushIntervalNanoseconds, checked after every line so that a ring that never empties is still flushed; lines that can not be written after a failure are counted as dropped
+	private void consume()
+	{
+		final long idleParkNanoseconds = max(1L, flushIntervalNanoseconds / 4L);
+		long head = 0L;
+		long oldestUnflushedNanoseconds = 0L;
+		boolean hasUnflushed = false;
+		while (true)
+		{
+			final int index = (int) head & mask;
+			if (sequences.get(index) == head + 1L)
+			{
+				final int length = lengths[index];
+				if (length != Abandoned)
+				{
+					if (failure != null)
+					{
+						droppedLines.increment();
+					}
+					else
+					{
+						@Nullable final byte[] oversizedLine = oversizedLines[index];
+						final byte[] line = oversizedLine == null ? slots[index] : oversizedLine;
+						if (batchLength + length + NewLine.length > batch.length)
+						{
+							writeAndFlushBatch();
+							hasUnflushed = false;
+						}
+						if (length + NewLine.length > batch.length)
+						{
+							if (!write(line, length) || !write(NewLine, NewLine.length))
+							{
+								droppedLines.increment();
+							}
+						}
+						else
+						{
+							arraycopy(line, 0, batch, batchLength, length);
+							batchLength += length;
+							arraycopy(NewLine, 0, batch, batchLength, NewLine.length);
+							batchLength += NewLine.length;
+							batchLines++;
+						}
+						if (!hasUnflushed)
+						{
+							hasUnflushed = true;
+							oldestUnflushedNanoseconds = nanoTime();
+						}
+					}
+				}
+				oversizedLines[index] = null;
+				sequences.lazySet(index, head + mask + 1L);
+				head++;
+				if (hasUnflushed && nanoTime() - oldestUnflushedNanoseconds >= flushIntervalNanoseconds)
+				{
+					writeAndFlushBatch();
+					hasUnflushed = false;
+				}
+				continue;
+			}
+
+			final boolean isClosing = closed && tail.get() == head;
+			if (hasUnflushed && (isClosing || nanoTime() - oldestUnflushedNanoseconds >= flushIntervalNanoseconds))
+			{
+				writeAndFlushBatch();
+				hasUnflushed = false;
+			}
+			if (isClosing)
+			{
+				return;
+			}
+
+			consumerParked = true;
+			if (sequences.get(index) != head + 1L && !closed)
+			{
+				parkNanos(idleParkNanoseconds);
+			}
+			consumerParked = false;
+		}
+	}
+
+	private void writeAndFlushBatch()
+	{
+		if (!write(batch, batchLength))
+		{
+			droppedLines.add(batchLines);
+		}
+		batchLength = 0;
+		batchLines = 0;
+		flush();
+	}
+
+	// Returns false if bytes were not written, because of this or an earlier failure
+	private boolean write(@NotNull final byte[] bytes, final int length)
+	{
+		if (failure != null)
+		{
+			return false;
+		}
+		if (length == 0)
+		{
+			return true;
+		}
+		try
+		{
+			byteArrayUser.useBytes(bytes, 0, length);
+			return true;
+		}
+		catch (final IOException e)
+		{
+			failure = e;
+			return false;
+		}
+	}
+
+	private void flush()
+	{
+		if (failure != null)
+		{
+			return;
+		}
+		try
+		{
+			flushable.flush();
+		}
+		catch (final IOException e)
+		{
+			failure = e;
+		}
+	}
+
+	// Drains every line already printed; the underlying stream or channel is not closed
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		unpark(consumer);
+		try
+		{
+			consumer.join();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted whilst draining");
+		}
+
+		@Nullable final IOException failure = this.failure;
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	@NotNull
+	private static StringBuilder formatting()
+	{
+		StringBuilder stringBuilder = LineFormatting.get();
+		if (stringBuilder.capacity() > MaximumRetainedFormattingCapacity)
+		{
+			stringBuilder = new StringBuilder(InitialFormattingCapacity);
+			LineFormatting.set(stringBuilder);
+		}
+		stringBuilder.setLength(0);
+		return stringBuilder;
+	}
+}
@@ -0,0 +1,69 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static java.nio.ByteBuffer.wrap;
+
+@FunctionalInterface
+public interface ByteArrayUser<X extends Exception>
+{
+	@NotNull
+	static ByteArrayUser<IOException> outputStreamByteArrayUser(@NotNull final OutputStream outputStream)
+	{
+		return outputStream::write;
+	}
+
+	@NotNull
+	static ByteArrayUser<IOException> writableByteChannelByteArrayUser(@NotNull final WritableByteChannel writableByteChannel)
+	{
+		return new ByteArrayUser<IOException>()
+		{
+			@NotNull private byte[] wrappedBytes = new byte[0];
+			@NotNull private ByteBuffer wrapper = wrap(wrappedBytes);
+
+			@Override
+			public void useBytes(@NotNull final byte[] bytes, final int offset, final int length) throws IOException
+			{
+				if (bytes != wrappedBytes)
+				{
+					wrappedBytes = bytes;
+					wrapper = wrap(bytes);
+				}
+				wrapper.limit(offset + length).position(offset);
+				while (wrapper.hasRemaining())
+				{
+					writableByteChannel.write(wrapper);
+				}
+			}
+		};
+	}
+
+	void useBytes(@NotNull final byte[] bytes, final int offset, final int length) throws X;
+}
@@ -0,0 +1,80 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+// A movable view of part of a CharSequence, so that each token need not be copied into its own String
+final class CharSequenceWindow implements CharSequence
+{
+	@NotNull private final CharSequence value;
+	private int startIndex;
+	private int length;
+
+	CharSequenceWindow(@NotNull final CharSequence value)
+	{
+		this.value = value;
+	}
+
+	@NotNull
+	CharSequenceWindow moveTo(final int startIndex, final int endIndex)
+	{
+		this.startIndex = startIndex;
+		length = endIndex - startIndex;
+		return this;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(final int index)
+	{
+		if (index < 0 || index >= length)
+		{
+			throw new StringIndexOutOfBoundsException(index);
+		}
+		return value.charAt(startIndex + index);
+	}
+
+	@NotNull
+	@Override
+	public CharSequence subSequence(final int start, final int end)
+	{
+		if (start < 0 || end > length || start > end)
+		{
+			throw new StringIndexOutOfBoundsException(end - start);
+		}
+		return value.subSequence(startIndex + start, startIndex + end);
+	}
+
+	@NotNull
+	@NonNls
+	@Override
+	public String toString()
+	{
+		return value.subSequence(startIndex, startIndex + length).toString();
+	}
+}
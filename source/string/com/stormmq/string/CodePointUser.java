@@ -24,10 +24,14 @@ package com.stormmq.string;
 
 import org.jetbrains.annotations.NotNull;
 
-import static com.stormmq.string.Formatting.format;
-import static java.lang.Character.isHighSurrogate;
-import static java.lang.Character.isLowSurrogate;
-import static java.lang.Character.toCodePoint;
+import java.nio.ByteBuffer;
+
+import static com.stormmq.string.InvalidUtf8StringException.invalidSequence;
+import static com.stormmq.string.MalformedInputPolicy.Replace;
+import static com.stormmq.string.MalformedInputPolicy.Report;
+import static com.stormmq.string.MalformedInputUser.ignoreMalformedInput;
+import static com.stormmq.string.Utf8Decoder.codePoint;
+import static com.stormmq.string.Utf8Decoder.sequenceLength;
 
 @FunctionalInterface
 public interface CodePointUser<X extends Exception>
@@ -36,45 +40,92 @@ public interface CodePointUser<X extends Exception>
 
 	int NonSurrogateIncrement = 1;
 
+	int ReplacementCodePoint = 0xFFFD;
+
 	void useCodePoint(final int index, final int codePoint) throws X;
 
 	default void iterateOverStringCodePoints(@NotNull final CharSequence value) throws InvalidUtf16StringException, X
 	{
-		int index = 0;
-		final int length = value.length();
-		while (index < length)
+		iterateOverStringCodePoints(value, Report, ignoreMalformedInput());
+	}
+
+	// Replace substitutes ReplacementCodePoint for each lone surrogate
+	default void iterateOverStringCodePoints(@NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		iterateOverStringCodePoints(value, malformedInputPolicy, ReplacementCodePoint, malformedInputUser);
+	}
+
+	// Lone surrogates are reported to malformedInputUser, with a length of one, before any replacement is used; with Report, an exception is thrown instead
+	// String and CharBuffer values are iterated over by loops specialised for them
+	default void iterateOverStringCodePoints(@NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		CodePoints.iterateOverCodePoints(value, malformedInputPolicy, replacementCodePoint, malformedInputUser, this);
+	}
+
+	// Indices are into value, not from offset
+	default void iterateOverCodePoints(@NotNull final char[] value, final int offset, final int length) throws InvalidUtf16StringException, X
+	{
+		iterateOverCodePoints(value, offset, length, Report, ReplacementCodePoint, ignoreMalformedInput());
+	}
+
+	default void iterateOverCodePoints(@NotNull final char[] value, final int offset, final int length, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		CodePoints.iterateOverCodePoints(value, offset, offset + length, 0, malformedInputPolicy, replacementCodePoint, malformedInputUser, this);
+	}
+
+	default void iterateOverUtf8CodePoints(@NotNull final byte[] value) throws InvalidUtf8StringException, X
+	{
+		iterateOverUtf8CodePoints(value, 0, value.length);
+	}
+
+	default void iterateOverUtf8CodePoints(@NotNull final byte[] value, final int offset, final int length) throws InvalidUtf8StringException, X
+	{
+		iterateOverUtf8CodePoints(value, offset, length, Report, ignoreMalformedInput());
+	}
+
+	// Each invalid byte is reported to malformedInputUser, with a length of one, and, for Replace, ReplacementCodePoint is used in its place; with Report, an exception is thrown instead
+	default void iterateOverUtf8CodePoints(@NotNull final byte[] value, final int offset, final int length, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf8StringException, X
+	{
+		final int endIndex = offset + length;
+		int index = offset;
+		while (index < endIndex)
 		{
-			final char firstCharacter = value.charAt(index);
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength != 0)
+			{
+				useCodePoint(index, codePoint(value, index, sequenceLength));
+				index += sequenceLength;
+				continue;
+			}
 
-			final int codePoint;
-			final int indexIncrement;
-			if (isHighSurrogate(firstCharacter))
+			if (malformedInputPolicy == Report)
 			{
-				final char low;
-				try
-				{
-					low = value.charAt(index + 1);
-				}
-				catch (final StringIndexOutOfBoundsException e)
-				{
-					throw new InvalidUtf16StringException(format("String value contains a missing final low surrogate after index '%1$s'", index), e);
-				}
-				codePoint = toCodePoint(firstCharacter, low);
-				indexIncrement = HighSurrogateIncrement;
+				throw invalidSequence(index);
 			}
-			else if (isLowSurrogate(firstCharacter))
+			malformedInputUser.useMalformedInput(index, 1);
+			if (malformedInputPolicy == Replace)
 			{
-				throw new InvalidUtf16StringException(format("String value contains a low surrogate without a preceding high surrogate at index '%1$s'", index));
+				useCodePoint(index, ReplacementCodePoint);
 			}
-			else
+			index++;
+		}
+	}
+
+	default void iterateOverUtf8CodePoints(@NotNull final ByteBuffer value) throws InvalidUtf8StringException, X
+	{
+		final int endIndex = value.limit();
+		int index = value.position();
+		while (index < endIndex)
+		{
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
 			{
-				codePoint = firstCharacter;
-				indexIncrement = NonSurrogateIncrement;
+				throw invalidSequence(index);
 			}
 
-			useCodePoint(index, codePoint);
+			useCodePoint(index, codePoint(value, index, sequenceLength));
 
-			index += indexIncrement;
+			index += sequenceLength;
 		}
 	}
 }
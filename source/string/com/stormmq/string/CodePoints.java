@@ -0,0 +1,445 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.CharBuffer;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static com.stormmq.string.CodePointUser.HighSurrogateIncrement;
+import static com.stormmq.string.CodePointUser.NonSurrogateIncrement;
+import static com.stormmq.string.InvalidUtf16StringException.loneSurrogate;
+import static com.stormmq.string.MalformedInputPolicy.Replace;
+import static com.stormmq.string.MalformedInputPolicy.Report;
+import static java.lang.Character.*;
+import static java.util.stream.StreamSupport.intStream;
+
+// Code point loops specialised for String, char[] and CharBuffer, so that each charAt() or get() call site sees only one receiver type and can be inlined
+// The streams and spliterators split between chars, never within a surrogate pair, and, like String.codePoints(), pass lone surrogates through as they are
+public final class CodePoints
+{
+	private static final int MinimumSplitSize = 1024;
+
+	private CodePoints()
+	{
+	}
+
+	@NotNull
+	public static IntStream codePoints(@NotNull final CharSequence value, final boolean parallel)
+	{
+		return intStream(spliterator(value), parallel);
+	}
+
+	@NotNull
+	public static IntStream codePoints(@NotNull final char[] value, final int offset, final int length, final boolean parallel)
+	{
+		return intStream(spliterator(value, offset, length), parallel);
+	}
+
+	@NotNull
+	public static Spliterator.OfInt spliterator(@NotNull final CharSequence value)
+	{
+		if (value instanceof CharBuffer)
+		{
+			final CharBuffer charBuffer = (CharBuffer) value;
+			if (charBuffer.hasArray())
+			{
+				final int offset = charBuffer.arrayOffset() + charBuffer.position();
+				return new CharArrayCodePointSpliterator(charBuffer.array(), offset, offset + charBuffer.remaining());
+			}
+		}
+		return new CharSequenceCodePointSpliterator(value, 0, value.length());
+	}
+
+	@NotNull
+	public static Spliterator.OfInt spliterator(@NotNull final char[] value, final int offset, final int length)
+	{
+		return new CharArrayCodePointSpliterator(value, offset, offset + length);
+	}
+
+	static <X extends Exception> void iterateOverCodePoints(@NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser, @NotNull final CodePointUser<X> codePointUser) throws InvalidUtf16StringException, X
+	{
+		if (value instanceof String)
+		{
+			iterateOverCodePoints((String) value, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			return;
+		}
+		if (value instanceof CharBuffer)
+		{
+			iterateOverCodePoints((CharBuffer) value, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			return;
+		}
+
+		int index = 0;
+		final int length = value.length();
+		while (index < length)
+		{
+			final char character = value.charAt(index);
+			if (isHighSurrogate(character) && index + 1 < length)
+			{
+				final char lowSurrogate = value.charAt(index + 1);
+				if (isLowSurrogate(lowSurrogate))
+				{
+					codePointUser.useCodePoint(index, toCodePoint(character, lowSurrogate));
+					index += HighSurrogateIncrement;
+					continue;
+				}
+			}
+
+			if (isSurrogate(character))
+			{
+				malformed(character, index, length, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			}
+			else
+			{
+				codePointUser.useCodePoint(index, character);
+			}
+			index += NonSurrogateIncrement;
+		}
+	}
+
+	private static <X extends Exception> void iterateOverCodePoints(@NotNull final String value, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser, @NotNull final CodePointUser<X> codePointUser) throws InvalidUtf16StringException, X
+	{
+		int index = 0;
+		final int length = value.length();
+		while (index < length)
+		{
+			final char character = value.charAt(index);
+			if (isHighSurrogate(character) && index + 1 < length)
+			{
+				final char lowSurrogate = value.charAt(index + 1);
+				if (isLowSurrogate(lowSurrogate))
+				{
+					codePointUser.useCodePoint(index, toCodePoint(character, lowSurrogate));
+					index += HighSurrogateIncrement;
+					continue;
+				}
+			}
+
+			if (isSurrogate(character))
+			{
+				malformed(character, index, length, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			}
+			else
+			{
+				codePointUser.useCodePoint(index, character);
+			}
+			index += NonSurrogateIncrement;
+		}
+	}
+
+	// Indices are relative to the position, as for any other CharSequence; neither position nor limit is changed
+	private static <X extends Exception> void iterateOverCodePoints(@NotNull final CharBuffer value, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser, @NotNull final CodePointUser<X> codePointUser) throws InvalidUtf16StringException, X
+	{
+		final int position = value.position();
+		if (value.hasArray())
+		{
+			final int offset = value.arrayOffset() + position;
+			iterateOverCodePoints(value.array(), offset, offset + value.remaining(), offset, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			return;
+		}
+
+		int index = position;
+		final int limit = value.limit();
+		while (index < limit)
+		{
+			final char character = value.get(index);
+			if (isHighSurrogate(character) && index + 1 < limit)
+			{
+				final char lowSurrogate = value.get(index + 1);
+				if (isLowSurrogate(lowSurrogate))
+				{
+					codePointUser.useCodePoint(index - position, toCodePoint(character, lowSurrogate));
+					index += HighSurrogateIncrement;
+					continue;
+				}
+			}
+
+			if (isSurrogate(character))
+			{
+				malformed(character, index - position, limit - position, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			}
+			else
+			{
+				codePointUser.useCodePoint(index - position, character);
+			}
+			index += NonSurrogateIncrement;
+		}
+	}
+
+	// Indices passed to codePointUser and malformedInputUser are less base
+	static <X extends Exception> void iterateOverCodePoints(@NotNull final char[] value, final int fromIndex, final int toIndex, final int base, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser, @NotNull final CodePointUser<X> codePointUser) throws InvalidUtf16StringException, X
+	{
+		int index = fromIndex;
+		while (index < toIndex)
+		{
+			final char character = value[index];
+			if (isHighSurrogate(character) && index + 1 < toIndex)
+			{
+				final char lowSurrogate = value[index + 1];
+				if (isLowSurrogate(lowSurrogate))
+				{
+					codePointUser.useCodePoint(index - base, toCodePoint(character, lowSurrogate));
+					index += HighSurrogateIncrement;
+					continue;
+				}
+			}
+
+			if (isSurrogate(character))
+			{
+				malformed(character, index - base, toIndex - base, malformedInputPolicy, replacementCodePoint, malformedInputUser, codePointUser);
+			}
+			else
+			{
+				codePointUser.useCodePoint(index - base, character);
+			}
+			index += NonSurrogateIncrement;
+		}
+	}
+
+	// Takes the lone surrogate itself rather than the sequence, so that the char[] loop need not wrap its array
+	private static <X extends Exception> void malformed(final char character, final int index, final int length, @NotNull final MalformedInputPolicy malformedInputPolicy, final int replacementCodePoint, @NotNull final MalformedInputUser<? extends X> malformedInputUser, @NotNull final CodePointUser<X> codePointUser) throws InvalidUtf16StringException, X
+	{
+		if (malformedInputPolicy == Report)
+		{
+			throw loneSurrogate(character, index, length);
+		}
+		malformedInputUser.useMalformedInput(index, NonSurrogateIncrement);
+		if (malformedInputPolicy == Replace)
+		{
+			codePointUser.useCodePoint(index, replacementCodePoint);
+		}
+	}
+
+	// Moves a split point forward by one if it would otherwise fall between the halves of a surrogate pair
+	private static int splitIndex(final char before, final char after, final int index)
+	{
+		return isHighSurrogate(before) && isLowSurrogate(after) ? index + 1 : index;
+	}
+
+	private static final class CharSequenceCodePointSpliterator implements Spliterator.OfInt
+	{
+		@NotNull private final CharSequence value;
+		private int index;
+		private final int fence;
+
+		private CharSequenceCodePointSpliterator(@NotNull final CharSequence value, final int index, final int fence)
+		{
+			this.value = value;
+			this.index = index;
+			this.fence = fence;
+		}
+
+		@Override
+		public OfInt trySplit()
+		{
+			final int origin = index;
+			if (fence - origin < MinimumSplitSize)
+			{
+				return null;
+			}
+			final int middle = (origin + fence) >>> 1;
+			final int splitIndex = splitIndex(value.charAt(middle - 1), value.charAt(middle), middle);
+			index = splitIndex;
+			return new CharSequenceCodePointSpliterator(value, origin, splitIndex);
+		}
+
+		@Override
+		public boolean tryAdvance(@NotNull final IntConsumer action)
+		{
+			if (index >= fence)
+			{
+				return false;
+			}
+			final char character = value.charAt(index++);
+			if (isHighSurrogate(character) && index < fence)
+			{
+				final char lowSurrogate = value.charAt(index);
+				if (isLowSurrogate(lowSurrogate))
+				{
+					index++;
+					action.accept(toCodePoint(character, lowSurrogate));
+					return true;
+				}
+			}
+			action.accept(character);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(@NotNull final IntConsumer action)
+		{
+			if (value instanceof String)
+			{
+				forEachRemaining((String) value, index, fence, action);
+			}
+			else
+			{
+				forEachRemaining(value, index, fence, action);
+			}
+			index = fence;
+		}
+
+		private static void forEachRemaining(@NotNull final String value, final int fromIndex, final int toIndex, @NotNull final IntConsumer action)
+		{
+			int index = fromIndex;
+			while (index < toIndex)
+			{
+				final char character = value.charAt(index++);
+				if (isHighSurrogate(character) && index < toIndex)
+				{
+					final char lowSurrogate = value.charAt(index);
+					if (isLowSurrogate(lowSurrogate))
+					{
+						index++;
+						action.accept(toCodePoint(character, lowSurrogate));
+						continue;
+					}
+				}
+				action.accept(character);
+			}
+		}
+
+		private static void forEachRemaining(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final IntConsumer action)
+		{
+			int index = fromIndex;
+			while (index < toIndex)
+			{
+				final char character = value.charAt(index++);
+				if (isHighSurrogate(character) && index < toIndex)
+				{
+					final char lowSurrogate = value.charAt(index);
+					if (isLowSurrogate(lowSurrogate))
+					{
+						index++;
+						action.accept(toCodePoint(character, lowSurrogate));
+						continue;
+					}
+				}
+				action.accept(character);
+			}
+		}
+
+		// An upper bound: the number of chars
+		@Override
+		public long estimateSize()
+		{
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics()
+		{
+			return ORDERED | NONNULL | (value instanceof String ? IMMUTABLE : 0);
+		}
+	}
+
+	private static final class CharArrayCodePointSpliterator implements Spliterator.OfInt
+	{
+		@NotNull private final char[] value;
+		private int index;
+		private final int fence;
+
+		private CharArrayCodePointSpliterator(@NotNull final char[] value, final int index, final int fence)
+		{
+			this.value = value;
+			this.index = index;
+			this.fence = fence;
+		}
+
+		@Override
+		public OfInt trySplit()
+		{
+			final int origin = index;
+			if (fence - origin < MinimumSplitSize)
+			{
+				return null;
+			}
+			final int middle = (origin + fence) >>> 1;
+			final int splitIndex = splitIndex(value[middle - 1], value[middle], middle);
+			index = splitIndex;
+			return new CharArrayCodePointSpliterator(value, origin, splitIndex);
+		}
+
+		@Override
+		public boolean tryAdvance(@NotNull final IntConsumer action)
+		{
+			if (index >= fence)
+			{
+				return false;
+			}
+			final char character = value[index++];
+			if (isHighSurrogate(character) && index < fence)
+			{
+				final char lowSurrogate = value[index];
+				if (isLowSurrogate(lowSurrogate))
+				{
+					index++;
+					action.accept(toCodePoint(character, lowSurrogate));
+					return true;
+				}
+			}
+			action.accept(character);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(@NotNull final IntConsumer action)
+		{
+			int index = this.index;
+			final int fence = this.fence;
+			final char[] value = this.value;
+			while (index < fence)
+			{
+				final char character = value[index++];
+				if (isHighSurrogate(character) && index < fence)
+				{
+					final char lowSurrogate = value[index];
+					if (isLowSurrogate(lowSurrogate))
+					{
+						index++;
+						action.accept(toCodePoint(character, lowSurrogate));
+						continue;
+					}
+				}
+				action.accept(character);
+			}
+			this.index = fence;
+		}
+
+		// An upper bound: the number of chars
+		@Override
+		public long estimateSize()
+		{
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics()
+		{
+			return ORDERED | NONNULL;
+		}
+	}
+}
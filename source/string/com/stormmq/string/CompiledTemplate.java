@@ -0,0 +1,391 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.stormmq.string.Formatting.NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance;
+import static com.stormmq.string.Formatting.appendUpperCaseHex;
+import static com.stormmq.string.StringConstants._null;
+import static java.lang.System.lineSeparator;
+
+public final class CompiledTemplate
+{
+	// The same grammar java.util.Formatter uses for a format specifier
+	@NotNull private static final Pattern FormatSpecifier = Pattern.compile("%(\\d+\\$)?([-#+ 0,(<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+
+	private static final int LiteralText = 0;
+	private static final int StringConversion = 1;
+	private static final int DecimalConversion = 2;
+	private static final int UpperCaseHexadecimalConversion = 3;
+	private static final int FormatterFallback = 4;
+
+	private static final int NoArgument = -1;
+	private static final int InitialRenderingCapacity = 1024;
+	private static final int MaximumRetainedRenderingCapacity = 64 * 1024;
+
+	@NotNull private static final ThreadLocal<StringBuilder> Rendering = new ThreadLocal<>();
+
+	@NotNull
+	public static CompiledTemplate compile(@NonNls @NotNull final String template)
+	{
+		final List<Segment> segments = new ArrayList<>(8);
+		final Matcher matcher = FormatSpecifier.matcher(template);
+		int lastOrdinaryArgumentIndex = -1;
+		int lastArgumentIndex = -1;
+		int index = 0;
+		final int length = template.length();
+		while (index < length)
+		{
+			final int percentIndex = template.indexOf('%', index);
+			if (percentIndex != index)
+			{
+				final int literalEndIndex = percentIndex == -1 ? length : percentIndex;
+				final String literalText = template.substring(index, literalEndIndex);
+				segments.add(new Segment(LiteralText, literalText, literalText, NoArgument, 0));
+				index = literalEndIndex;
+				continue;
+			}
+
+			if (!matcher.find(index) || matcher.start() != index)
+			{
+				throw new UnknownFormatConversionException(String.valueOf(index + 1 == length ? '%' : template.charAt(index + 1)));
+			}
+			index = matcher.end();
+
+			final String specifier = matcher.group();
+			@Nullable final String explicitIndex = matcher.group(1);
+			final String flags = matcher.group(2) == null ? "" : matcher.group(2);
+			@Nullable final String width = matcher.group(3);
+			@Nullable final String precision = matcher.group(4);
+			@Nullable final String dateTimePrefix = matcher.group(5);
+			final char conversion = matcher.group(6).charAt(0);
+
+			final boolean hasNoPrecisionOrDateTimePrefix = precision == null && dateTimePrefix == null;
+			if (conversion == '%' || conversion == 'n')
+			{
+				final boolean isBare = explicitIndex == null && flags.isEmpty() && width == null && hasNoPrecisionOrDateTimePrefix;
+				if (isBare)
+				{
+					segments.add(new Segment(LiteralText, conversion == '%' ? "%" : lineSeparator(), specifier, NoArgument, 0));
+				}
+				else
+				{
+					segments.add(new Segment(FormatterFallback, specifier, specifier, NoArgument, 0));
+				}
+				continue;
+			}
+
+			final boolean isRelative = flags.indexOf('<') != -1;
+			final int argumentIndex;
+			if (isRelative)
+			{
+				if (lastArgumentIndex < 0)
+				{
+					throw new MissingFormatArgumentException(specifier);
+				}
+				argumentIndex = lastArgumentIndex;
+			}
+			else if (explicitIndex == null)
+			{
+				lastOrdinaryArgumentIndex++;
+				argumentIndex = lastOrdinaryArgumentIndex;
+			}
+			else
+			{
+				argumentIndex = explicitArgumentIndex(specifier, explicitIndex);
+			}
+			lastArgumentIndex = argumentIndex;
+
+			final String otherFlags = isRelative ? flags.replace("<", "") : flags;
+			final boolean isPlain = otherFlags.isEmpty() && width == null && hasNoPrecisionOrDateTimePrefix;
+			if (isPlain && conversion == 's')
+			{
+				segments.add(new Segment(StringConversion, specifier, specifier, argumentIndex, 0));
+			}
+			else if (isPlain && conversion == 'd')
+			{
+				segments.add(new Segment(DecimalConversion, specifier, specifier, argumentIndex, 0));
+			}
+			else if (conversion == 'X' && (isPlain || ("0".equals(otherFlags) && width != null && hasNoPrecisionOrDateTimePrefix)))
+			{
+				segments.add(new Segment(UpperCaseHexadecimalConversion, specifier, specifier, argumentIndex, width == null ? 0 : Integer.parseInt(width)));
+			}
+			else
+			{
+				final String rewrittenToReferToItsSoleArgument = "%1$" + otherFlags + (width == null ? "" : width) + (precision == null ? "" : precision) + (dateTimePrefix == null ? "" : dateTimePrefix) + conversion;
+				segments.add(new Segment(FormatterFallback, rewrittenToReferToItsSoleArgument, specifier, argumentIndex, 0));
+			}
+		}
+
+		return new CompiledTemplate(template, segments.toArray(new Segment[segments.size()]));
+	}
+
+	// An explicit index must be at least 1; otherwise java.util.Formatter is left to reject it, so that the exception is whatever it would be for String.format() on this JDK
+	private static int explicitArgumentIndex(@NotNull final String specifier, @NotNull final String explicitIndex)
+	{
+		try
+		{
+			final int position = Integer.parseInt(explicitIndex.substring(0, explicitIndex.length() - 1));
+			if (position >= 1)
+			{
+				return position - 1;
+			}
+		}
+		catch (final NumberFormatException ignored)
+		{
+		}
+		// Given no arguments, so that it throws even where, as on JDK 8, it would treat '%0$s' as an ordinary index
+		@SuppressWarnings({"resource", "IOResourceOpenedButNotSafelyClosed"}) final Formatter formatter = new Formatter(new StringBuilder(), NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance);
+		formatter.format(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance, specifier);
+		throw new MissingFormatArgumentException(specifier);
+	}
+
+	@NotNull private final String template;
+	@NotNull private final Segment[] segments;
+
+	private CompiledTemplate(@NotNull final String template, @NotNull final Segment[] segments)
+	{
+		this.template = template;
+		this.segments = segments;
+	}
+
+	@NotNull
+	@NonNls
+	public String format(@NotNull @NonNls final Object... arguments)
+	{
+		final StringBuilder stringBuilder = acquireRendering();
+		try
+		{
+			return render(stringBuilder, arguments).toString();
+		}
+		finally
+		{
+			releaseRendering(stringBuilder);
+		}
+	}
+
+	public void render(@NotNull final Appendable appendable, @NotNull @NonNls final Object... arguments) throws IOException
+	{
+		if (appendable instanceof StringBuilder)
+		{
+			render((StringBuilder) appendable, arguments);
+			return;
+		}
+
+		final StringBuilder stringBuilder = acquireRendering();
+		try
+		{
+			appendable.append(render(stringBuilder, arguments));
+		}
+		finally
+		{
+			releaseRendering(stringBuilder);
+		}
+	}
+
+	// Returns the number of bytes written; if there is too little space remaining, destination is unchanged and BufferOverflowException is thrown
+	public int renderUtf8(@NotNull final ByteBuffer destination, @NotNull @NonNls final Object... arguments)
+	{
+		final StringBuilder stringBuilder = acquireRendering();
+		final int position = destination.position();
+		try
+		{
+			final int result = Utf8ByteUser.encodeInto(render(stringBuilder, arguments), destination);
+			if (result < 0)
+			{
+				destination.position(position);
+				throw new BufferOverflowException();
+			}
+			return result;
+		}
+		catch (final InvalidUtf16StringException e)
+		{
+			destination.position(position);
+			throw new IllegalArgumentException("Arguments rendered as invalid UTF-16", e);
+		}
+		finally
+		{
+			releaseRendering(stringBuilder);
+		}
+	}
+
+	@NotNull
+	public StringBuilder render(@NotNull final StringBuilder stringBuilder, @NotNull @NonNls final Object... arguments)
+	{
+		@SuppressWarnings("ConstantConditions") final boolean isNullVarArgs = arguments == null;
+		if (isNullVarArgs)
+		{
+			return stringBuilder.append(Formatting.format(template, (Object[]) null));
+		}
+
+		for (final Segment segment : segments)
+		{
+			final String text = segment.text;
+			final int kind = segment.kind;
+			if (kind == LiteralText)
+			{
+				stringBuilder.append(text);
+				continue;
+			}
+
+			final int argumentIndex = segment.argumentIndex;
+			if (argumentIndex >= arguments.length)
+			{
+				if (kind == FormatterFallback)
+				{
+					// java.util.Formatter rejects a malformed specifier before a missing argument
+					fallback(new StringBuilder(), text, null);
+				}
+				throw new MissingFormatArgumentException(segment.specifier);
+			}
+			@Nullable final Object argument = argumentIndex == NoArgument ? null : arguments[argumentIndex];
+			switch (kind)
+			{
+				case StringConversion:
+					if (argument instanceof Formattable)
+					{
+						fallback(stringBuilder, "%1$s", argument);
+					}
+					else
+					{
+						stringBuilder.append(argument == null ? _null : argument.toString());
+					}
+					break;
+
+				case DecimalConversion:
+					if (argument instanceof Integer || argument instanceof Long || argument instanceof Short || argument instanceof Byte)
+					{
+						stringBuilder.append(((Number) argument).longValue());
+					}
+					else
+					{
+						fallback(stringBuilder, "%1$d", argument);
+					}
+					break;
+
+				case UpperCaseHexadecimalConversion:
+					appendUpperCaseHexadecimal(stringBuilder, argument, segment.width);
+					break;
+
+				case FormatterFallback:
+					fallback(stringBuilder, text, argument);
+					break;
+
+				default:
+					throw new IllegalStateException(StringConstants.Should_be_impossible);
+			}
+		}
+		return stringBuilder;
+	}
+
+	@SuppressWarnings("MagicNumber")
+	private static void appendUpperCaseHexadecimal(@NotNull final StringBuilder stringBuilder, @Nullable final Object argument, final int width)
+	{
+		final long unsignedValue;
+		if (argument instanceof Integer)
+		{
+			unsignedValue = (Integer) argument & 0xFFFF_FFFFL;
+		}
+		else if (argument instanceof Long)
+		{
+			unsignedValue = (Long) argument;
+		}
+		else if (argument instanceof Short)
+		{
+			unsignedValue = (Short) argument & 0xFFFFL;
+		}
+		else if (argument instanceof Byte)
+		{
+			unsignedValue = (Byte) argument & 0xFFL;
+		}
+		else
+		{
+			fallback(stringBuilder, width == 0 ? "%1$X" : "%1$0" + width + 'X', argument);
+			return;
+		}
+		appendUpperCaseHex(stringBuilder, unsignedValue, width);
+	}
+
+	private static void fallback(@NotNull final StringBuilder stringBuilder, @NotNull final String specifier, @Nullable final Object argument)
+	{
+		@SuppressWarnings({"resource", "IOResourceOpenedButNotSafelyClosed"}) final Formatter formatter = new Formatter(stringBuilder, NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance);
+		formatter.format(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance, specifier, argument);
+	}
+
+	// Taken out of the thread local whilst in use, as an argument's toString() may itself render a template
+	@NotNull
+	private static StringBuilder acquireRendering()
+	{
+		@Nullable final StringBuilder stringBuilder = Rendering.get();
+		if (stringBuilder == null)
+		{
+			return new StringBuilder(InitialRenderingCapacity);
+		}
+		Rendering.set(null);
+		stringBuilder.setLength(0);
+		return stringBuilder;
+	}
+
+	private static void releaseRendering(@NotNull final StringBuilder stringBuilder)
+	{
+		if (stringBuilder.capacity() <= MaximumRetainedRenderingCapacity)
+		{
+			Rendering.set(stringBuilder);
+		}
+	}
+
+	@Override
+	@NotNull
+	@NonNls
+	public String toString()
+	{
+		return template;
+	}
+
+	private static final class Segment
+	{
+		private final int kind;
+		@NotNull private final String text;
+		@NotNull private final String specifier;
+		private final int argumentIndex;
+		private final int width;
+
+		// specifier is as the template had it, for messages, whereas text may be rewritten
+		private Segment(final int kind, @NotNull final String text, @NotNull final String specifier, final int argumentIndex, final int width)
+		{
+			this.kind = kind;
+			this.text = text;
+			this.specifier = specifier;
+			this.argumentIndex = argumentIndex;
+			this.width = width;
+		}
+	}
+}
@@ -0,0 +1,467 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import static com.stormmq.string.DescriptorUser.ClassTypeCode;
+import static com.stormmq.string.DescriptorUser.VoidTypeCode;
+import static com.stormmq.string.SignatureUser.*;
+import static com.stormmq.string.StringConstants.*;
+
+// Single-pass recursive descent over the grammars of JVMS 4.3 and 4.7.9.1; returns the index after the last character parsed or ~index of the first invalid one
+final class DescriptorParser
+{
+	static final int MaximumArrayDimensions = 255;
+
+	private static final char TypeVariableCode = 'T';
+	private static final char StartOfTypeArguments = '<';
+	private static final char EndOfTypeArguments = '>';
+	private static final char InnerClassSeparator = '.';
+	private static final char BoundSeparator = ':';
+	private static final char ThrowsCharacter = '^';
+
+	private DescriptorParser()
+	{
+	}
+
+	static <X extends Exception> int fieldType(@NotNull final CharSequence value, final int index, @NotNull final DescriptorUser<X> descriptorUser) throws X
+	{
+		final int length = value.length();
+		int current = index;
+		while (current < length && value.charAt(current) == ArrayTypeCodeCharacter)
+		{
+			current++;
+		}
+		final int arrayDimensions = current - index;
+		if (arrayDimensions > MaximumArrayDimensions || current == length)
+		{
+			return ~current;
+		}
+
+		final char typeCode = value.charAt(current);
+		if (isPrimitiveTypeCode(typeCode))
+		{
+			descriptorUser.usePrimitiveType(arrayDimensions, typeCode);
+			return current + 1;
+		}
+		if (typeCode != ClassTypeCode)
+		{
+			return ~current;
+		}
+
+		final int startIndex = current + 1;
+		final int endIndex = internalTypeName(value, startIndex, length);
+		if (endIndex < 0)
+		{
+			return endIndex;
+		}
+		if (endIndex == length || value.charAt(endIndex) != EndOfTypeDescriptorCharacter)
+		{
+			return ~endIndex;
+		}
+		descriptorUser.useClassType(arrayDimensions, startIndex, endIndex);
+		descriptorUser.endOfClassType();
+		return endIndex + 1;
+	}
+
+	static <X extends Exception> int methodDescriptor(@NotNull final CharSequence value, @NotNull final DescriptorUser<X> descriptorUser) throws X
+	{
+		final int length = value.length();
+		if (length == 0 || value.charAt(0) != StartOfMethodDescriptorParameters)
+		{
+			return ~0;
+		}
+
+		int current = 1;
+		while (current < length && value.charAt(current) != EndOfMethodDescriptorParameters)
+		{
+			current = fieldType(value, current, descriptorUser);
+			if (current < 0)
+			{
+				return current;
+			}
+		}
+		if (current == length)
+		{
+			return ~current;
+		}
+		descriptorUser.endOfMethodParameters();
+		current++;
+
+		if (current < length && value.charAt(current) == VoidTypeCode)
+		{
+			descriptorUser.usePrimitiveType(0, VoidTypeCode);
+			current++;
+		}
+		else
+		{
+			current = fieldType(value, current, descriptorUser);
+			if (current < 0)
+			{
+				return current;
+			}
+		}
+		return current == length ? current : ~current;
+	}
+
+	static <X extends Exception> int fieldSignature(@NotNull final CharSequence value, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		final int length = value.length();
+		final int current = referenceTypeSignature(value, 0, length, signatureUser);
+		return current < 0 || current == length ? current : ~current;
+	}
+
+	static <X extends Exception> int classSignature(@NotNull final CharSequence value, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		final int length = value.length();
+		int current = typeParameters(value, 0, length, signatureUser);
+		if (current < 0)
+		{
+			return current;
+		}
+
+		current = classTypeSignature(value, current, length, 0, signatureUser);
+		while (current >= 0 && current < length)
+		{
+			signatureUser.useSuperinterface();
+			current = classTypeSignature(value, current, length, 0, signatureUser);
+		}
+		return current;
+	}
+
+	static <X extends Exception> int methodSignature(@NotNull final CharSequence value, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		final int length = value.length();
+		int current = typeParameters(value, 0, length, signatureUser);
+		if (current < 0)
+		{
+			return current;
+		}
+		if (current == length || value.charAt(current) != StartOfMethodDescriptorParameters)
+		{
+			return ~current;
+		}
+
+		current++;
+		while (current < length && value.charAt(current) != EndOfMethodDescriptorParameters)
+		{
+			current = javaTypeSignature(value, current, length, signatureUser);
+			if (current < 0)
+			{
+				return current;
+			}
+		}
+		if (current == length)
+		{
+			return ~current;
+		}
+		signatureUser.endOfMethodParameters();
+		current++;
+
+		if (current < length && value.charAt(current) == VoidTypeCode)
+		{
+			signatureUser.usePrimitiveType(0, VoidTypeCode);
+			current++;
+		}
+		else
+		{
+			current = javaTypeSignature(value, current, length, signatureUser);
+		}
+
+		while (current >= 0 && current < length)
+		{
+			if (value.charAt(current) != ThrowsCharacter)
+			{
+				return ~current;
+			}
+			current++;
+			if (current == length)
+			{
+				return ~current;
+			}
+			signatureUser.useThrows();
+			current = value.charAt(current) == TypeVariableCode ? typeVariableSignature(value, current, length, 0, signatureUser) : classTypeSignature(value, current, length, 0, signatureUser);
+		}
+		return current;
+	}
+
+	private static <X extends Exception> int typeParameters(@NotNull final CharSequence value, final int index, final int length, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		if (index == length || value.charAt(index) != StartOfTypeArguments)
+		{
+			return index;
+		}
+
+		int current = index + 1;
+		do
+		{
+			final int startIndex = current;
+			current = identifier(value, current, length);
+			if (current < 0)
+			{
+				return current;
+			}
+			if (current == length || value.charAt(current) != BoundSeparator)
+			{
+				return ~current;
+			}
+			signatureUser.useTypeParameter(startIndex, current);
+
+			current++;
+			signatureUser.useClassBound();
+			if (current < length && isStartOfReferenceTypeSignature(value.charAt(current)))
+			{
+				current = referenceTypeSignature(value, current, length, signatureUser);
+				if (current < 0)
+				{
+					return current;
+				}
+			}
+
+			while (current < length && value.charAt(current) == BoundSeparator)
+			{
+				signatureUser.useInterfaceBound();
+				current = referenceTypeSignature(value, current + 1, length, signatureUser);
+				if (current < 0)
+				{
+					return current;
+				}
+			}
+			if (current == length)
+			{
+				return ~current;
+			}
+		}
+		while (value.charAt(current) != EndOfTypeArguments);
+
+		signatureUser.endOfTypeParameters();
+		return current + 1;
+	}
+
+	private static <X extends Exception> int javaTypeSignature(@NotNull final CharSequence value, final int index, final int length, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		if (index < length && isPrimitiveTypeCode(value.charAt(index)))
+		{
+			signatureUser.usePrimitiveType(0, value.charAt(index));
+			return index + 1;
+		}
+		return referenceTypeSignature(value, index, length, signatureUser);
+	}
+
+	private static <X extends Exception> int referenceTypeSignature(@NotNull final CharSequence value, final int index, final int length, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		int current = index;
+		while (current < length && value.charAt(current) == ArrayTypeCodeCharacter)
+		{
+			current++;
+		}
+		final int arrayDimensions = current - index;
+		if (arrayDimensions > MaximumArrayDimensions || current == length)
+		{
+			return ~current;
+		}
+
+		final char typeCode = value.charAt(current);
+		if (arrayDimensions != 0 && isPrimitiveTypeCode(typeCode))
+		{
+			signatureUser.usePrimitiveType(arrayDimensions, typeCode);
+			return current + 1;
+		}
+		if (typeCode == TypeVariableCode)
+		{
+			return typeVariableSignature(value, current, length, arrayDimensions, signatureUser);
+		}
+		return classTypeSignature(value, current, length, arrayDimensions, signatureUser);
+	}
+
+	private static <X extends Exception> int typeVariableSignature(@NotNull final CharSequence value, final int index, final int length, final int arrayDimensions, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		if (value.charAt(index) != TypeVariableCode)
+		{
+			return ~index;
+		}
+		final int startIndex = index + 1;
+		final int endIndex = identifier(value, startIndex, length);
+		if (endIndex < 0)
+		{
+			return endIndex;
+		}
+		if (endIndex == length || value.charAt(endIndex) != EndOfTypeDescriptorCharacter)
+		{
+			return ~endIndex;
+		}
+		signatureUser.useTypeVariable(arrayDimensions, startIndex, endIndex);
+		return endIndex + 1;
+	}
+
+	private static <X extends Exception> int classTypeSignature(@NotNull final CharSequence value, final int index, final int length, final int arrayDimensions, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		if (index == length || value.charAt(index) != ClassTypeCode)
+		{
+			return ~index;
+		}
+
+		final int startIndex = index + 1;
+		int current = internalTypeName(value, startIndex, length);
+		if (current < 0)
+		{
+			return current;
+		}
+		signatureUser.useClassType(arrayDimensions, startIndex, current);
+		current = typeArguments(value, current, length, signatureUser);
+
+		while (current >= 0 && current < length && value.charAt(current) == InnerClassSeparator)
+		{
+			final int innerStartIndex = current + 1;
+			current = identifier(value, innerStartIndex, length);
+			if (current < 0)
+			{
+				return current;
+			}
+			signatureUser.useInnerClassType(innerStartIndex, current);
+			current = typeArguments(value, current, length, signatureUser);
+		}
+		if (current < 0)
+		{
+			return current;
+		}
+
+		if (current == length || value.charAt(current) != EndOfTypeDescriptorCharacter)
+		{
+			return ~current;
+		}
+		signatureUser.endOfClassType();
+		return current + 1;
+	}
+
+	private static <X extends Exception> int typeArguments(@NotNull final CharSequence value, final int index, final int length, @NotNull final SignatureUser<X> signatureUser) throws X
+	{
+		if (index == length || value.charAt(index) != StartOfTypeArguments)
+		{
+			return index;
+		}
+
+		signatureUser.startOfTypeArguments();
+		int current = index + 1;
+		do
+		{
+			if (current == length)
+			{
+				return ~current;
+			}
+			final char wildcard = value.charAt(current);
+			switch (wildcard)
+			{
+				case UnboundedWildcard:
+					signatureUser.useWildcard(wildcard);
+					current++;
+					break;
+
+				case ExtendsWildcard:
+				case SuperWildcard:
+					signatureUser.useWildcard(wildcard);
+					current = referenceTypeSignature(value, current + 1, length, signatureUser);
+					break;
+
+				default:
+					current = referenceTypeSignature(value, current, length, signatureUser);
+			}
+			if (current < 0)
+			{
+				return current;
+			}
+			if (current == length)
+			{
+				return ~current;
+			}
+		}
+		while (value.charAt(current) != EndOfTypeArguments);
+
+		signatureUser.endOfTypeArguments();
+		return current + 1;
+	}
+
+	// One or more identifiers separated by '/'; returns the index of the first character after the name
+	private static int internalTypeName(@NotNull final CharSequence value, final int index, final int length)
+	{
+		int current = identifier(value, index, length);
+		while (current >= 0 && current < length && value.charAt(current) == InternalTypeNameSeparator)
+		{
+			current = identifier(value, current + 1, length);
+		}
+		return current;
+	}
+
+	// An unqualified name (JVMS 4.2.2) which is also valid in signatures; returns the index of the first character after it
+	private static int identifier(@NotNull final CharSequence value, final int index, final int length)
+	{
+		int current = index;
+		while (current < length && !isIdentifierTerminator(value.charAt(current)))
+		{
+			current++;
+		}
+		return current == index ? ~index : current;
+	}
+
+	private static boolean isIdentifierTerminator(final char character)
+	{
+		switch (character)
+		{
+			case InnerClassSeparator:
+			case EndOfTypeDescriptorCharacter:
+			case ArrayTypeCodeCharacter:
+			case InternalTypeNameSeparator:
+			case StartOfTypeArguments:
+			case EndOfTypeArguments:
+			case BoundSeparator:
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isStartOfReferenceTypeSignature(final char character)
+	{
+		return character == ClassTypeCode || character == TypeVariableCode || character == ArrayTypeCodeCharacter;
+	}
+
+	static boolean isPrimitiveTypeCode(final char typeCode)
+	{
+		switch (typeCode)
+		{
+			case 'B':
+			case 'C':
+			case 'D':
+			case 'F':
+			case 'I':
+			case 'J':
+			case 'S':
+			case 'Z':
+				return true;
+
+			default:
+				return false;
+		}
+	}
+}
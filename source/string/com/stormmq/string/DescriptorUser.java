@@ -0,0 +1,56 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+// Receives the types of field and method descriptors (JVMS 4.3) in order, as type codes and index ranges into the descriptor rather than substrings
+// The parse methods return the index after the last character parsed, or ~index of the first invalid character; events before an invalid character will already have been received
+public interface DescriptorUser<X extends Exception>
+{
+	char VoidTypeCode = 'V';
+	char ClassTypeCode = 'L';
+
+	// typeCode is one of 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', or VoidTypeCode for a method's result
+	void usePrimitiveType(final int arrayDimensions, final char typeCode) throws X;
+
+	// The internal type name, eg 'java/lang/String', lies between startIndex and endIndex (exclusive)
+	void useClassType(final int arrayDimensions, final int startIndex, final int endIndex) throws X;
+
+	default void endOfClassType() throws X
+	{
+	}
+
+	default void endOfMethodParameters() throws X
+	{
+	}
+
+	default int parseFieldDescriptor(@NotNull final CharSequence value, final int index) throws X
+	{
+		return DescriptorParser.fieldType(value, index, this);
+	}
+
+	default int parseMethodDescriptor(@NotNull final CharSequence value) throws X
+	{
+		return DescriptorParser.methodDescriptor(value, this);
+	}
+}
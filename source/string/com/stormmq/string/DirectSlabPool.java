@@ -0,0 +1,90 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.stormmq.string.Formatting.format;
+import static java.nio.ByteBuffer.allocateDirect;
+
+// A thread safe pool of equally sized direct ByteBuffers ('slabs'), so that off-heap memory, which is slow to allocate and only freed by the garbage collector, is reused
+// At most maximumPooledSlabs are retained; slabs released beyond that are left to the garbage collector
+public final class DirectSlabPool
+{
+	// Large enough for any one code point in UTF-8
+	public static final int MinimumSlabSize = 4;
+
+	private final int slabSize;
+	private final int maximumPooledSlabs;
+	@NotNull private final ConcurrentLinkedQueue<ByteBuffer> pooledSlabs;
+	@NotNull private final AtomicInteger numberOfPooledSlabs;
+
+	public DirectSlabPool(final int slabSize, final int maximumPooledSlabs)
+	{
+		if (slabSize < MinimumSlabSize)
+		{
+			throw new IllegalArgumentException(format("slabSize '%1$s' must be at least '%2$s'", slabSize, MinimumSlabSize));
+		}
+		if (maximumPooledSlabs < 0)
+		{
+			throw new IllegalArgumentException(format("maximumPooledSlabs '%1$s' can not be negative", maximumPooledSlabs));
+		}
+		this.slabSize = slabSize;
+		this.maximumPooledSlabs = maximumPooledSlabs;
+		pooledSlabs = new ConcurrentLinkedQueue<>();
+		numberOfPooledSlabs = new AtomicInteger(0);
+	}
+
+	public int slabSize()
+	{
+		return slabSize;
+	}
+
+	// The slab is cleared, ie its position is zero and its limit its capacity
+	@NotNull
+	public ByteBuffer acquire()
+	{
+		@Nullable final ByteBuffer pooled = pooledSlabs.poll();
+		if (pooled == null)
+		{
+			return allocateDirect(slabSize);
+		}
+		numberOfPooledSlabs.decrementAndGet();
+		pooled.clear();
+		return pooled;
+	}
+
+	// slab must have come from acquire() and must not be used afterwards
+	public void release(@NotNull final ByteBuffer slab)
+	{
+		if (numberOfPooledSlabs.incrementAndGet() > maximumPooledSlabs)
+		{
+			numberOfPooledSlabs.decrementAndGet();
+			return;
+		}
+		pooledSlabs.offer(slab);
+	}
+}
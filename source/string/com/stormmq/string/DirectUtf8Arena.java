@@ -0,0 +1,152 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Encodes a batch of strings as UTF-8 straight into pooled direct slabs, so that they can then be written to a channel without any copying
+// Not thread safe; a string that does not fit in what remains of a slab continues in the next one, split between code points
+public final class DirectUtf8Arena implements AutoCloseable
+{
+	@NotNull private final DirectSlabPool directSlabPool;
+	@NotNull private final List<ByteBuffer> slabs;
+	@NotNull private ByteBuffer current;
+
+	public DirectUtf8Arena(@NotNull final DirectSlabPool directSlabPool)
+	{
+		this.directSlabPool = directSlabPool;
+		slabs = new ArrayList<>(4);
+		current = acquire();
+	}
+
+	// If value is invalid, nothing is encoded and the arena is as it was before
+	public void encode(@NotNull final CharSequence value) throws InvalidUtf16StringException
+	{
+		encode(value, 0, value.length());
+	}
+
+	public void encode(@NotNull final CharSequence value, final int fromIndex, final int toIndex) throws InvalidUtf16StringException
+	{
+		final int markSlabIndex = slabs.size() - 1;
+		final int markPosition = current.position();
+		int index = fromIndex;
+		try
+		{
+			while (true)
+			{
+				final int result = Utf8Encoder.encode(value, index, toIndex, current);
+				if (result >= 0)
+				{
+					return;
+				}
+				index = ~result;
+				current = acquire();
+			}
+		}
+		catch (final InvalidUtf16StringException e)
+		{
+			resetTo(markSlabIndex, markPosition);
+			throw e;
+		}
+	}
+
+	// Total bytes encoded
+	public long size()
+	{
+		long size = 0L;
+		for (final ByteBuffer slab : slabs)
+		{
+			size += slab.position();
+		}
+		return size;
+	}
+
+	// Read-only views of the encoded bytes, valid until clear() or close(); suitable for GatheringByteChannel.write(ByteBuffer[])
+	@NotNull
+	public ByteBuffer[] encodedBuffers()
+	{
+		final int size = slabs.size();
+		final ByteBuffer[] encodedBuffers = new ByteBuffer[size];
+		for (int index = 0; index < size; index++)
+		{
+			final ByteBuffer slab = slabs.get(index);
+			final ByteBuffer encodedBuffer = slab.asReadOnlyBuffer();
+			encodedBuffer.flip();
+			encodedBuffers[index] = encodedBuffer;
+		}
+		return encodedBuffers;
+	}
+
+	// Writes everything encoded, blocking if necessary; returns the number of bytes written
+	public long writeTo(@NotNull final GatheringByteChannel gatheringByteChannel) throws IOException
+	{
+		final ByteBuffer[] encodedBuffers = encodedBuffers();
+		final long size = size();
+		long written = 0L;
+		while (written < size)
+		{
+			written += gatheringByteChannel.write(encodedBuffers);
+		}
+		return written;
+	}
+
+	// Returns all but one slab to the pool, ready for the next batch
+	public void clear()
+	{
+		resetTo(0, 0);
+	}
+
+	// The arena must not be used afterwards
+	@Override
+	public void close()
+	{
+		for (final ByteBuffer slab : slabs)
+		{
+			directSlabPool.release(slab);
+		}
+		slabs.clear();
+	}
+
+	@NotNull
+	private ByteBuffer acquire()
+	{
+		final ByteBuffer slab = directSlabPool.acquire();
+		slabs.add(slab);
+		return slab;
+	}
+
+	private void resetTo(final int slabIndex, final int position)
+	{
+		for (int index = slabs.size() - 1; index > slabIndex; index--)
+		{
+			directSlabPool.release(slabs.remove(index));
+		}
+		current = slabs.get(slabIndex);
+		current.limit(current.capacity()).position(position);
+	}
+}
@@ -25,15 +25,26 @@ package com.stormmq.string;
 import org.jetbrains.annotations.*;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.Locale;
 
+import static com.stormmq.string.Instrumentation.Enabled;
+import static com.stormmq.string.Instrumentation.begin;
+import static com.stormmq.string.Instrumentation.end;
+import static com.stormmq.string.Padding.writePaddedDecimal;
+import static com.stormmq.string.ShortestDecimal.TagShift;
+import static com.stormmq.string.ShortestDecimal.decimalExponent;
 import static com.stormmq.string.Utf8ByteUser.encodeToUtf8ByteArrayWithCertaintyValueIsValid;
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.max;
 import static java.lang.System.lineSeparator;
 
 public final class Formatting
 {
-	@Nullable private static final Locale NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance = (Locale) null;
+	@Nullable static final Locale NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance = (Locale) null;
 	private static final byte[] NewLine = encodeToUtf8ByteArrayWithCertaintyValueIsValid(lineSeparator());
 	private static final int NewLineLength = NewLine.length;
 
@@ -58,13 +69,44 @@ public final class Formatting
 	};
 
 	@NotNull private static final String[] UpperCaseHexadecimalBytes = upperCaseHexadecimalBytes();
+	@NotNull private static final byte[] HexadecimalDigitValues = hexadecimalDigitValues();
+	private static final int NotAHexadecimalDigit = -1;
 	private static final int IntMask = 0x00_00_00_0F;
 	private static final long LongMask = 0x00_00_00_00_00_00_00_0FL;
+
+	// As in '-2.2250738585072014E-308'
+	public static final int MaximumShortestDecimalLength = 24;
+	private static final char ZeroDigit = '0';
+	private static final char MinusSign = '-';
+	private static final char DecimalPoint = '.';
+	private static final char ExponentMarker = 'E';
+	@NotNull private static final long[] PowersOfTen =
+	{
+		1L,
+		10L,
+		100L,
+		1_000L,
+		10_000L,
+		100_000L,
+		1_000_000L,
+		10_000_000L,
+		100_000_000L,
+		1_000_000_000L,
+		10_000_000_000L,
+		100_000_000_000L,
+		1_000_000_000_000L,
+		10_000_000_000_000L,
+		100_000_000_000_000L,
+		1_000_000_000_000_000L,
+		10_000_000_000_000_000L,
+		100_000_000_000_000_000L,
+		1_000_000_000_000_000_000L
+	};
 	
 	@NotNull
 	private static String[] upperCaseHexadecimalBytes()
 	{
-		final int length = 255;
+		final int length = 256;
 		final String[] upperCaseHexadecimalBytes = new String[length];
 		for(int index = 0; index < length; index++)
 		{
@@ -76,11 +118,183 @@ public final class Formatting
 		return upperCaseHexadecimalBytes;
 	}
 
+	@SuppressWarnings("MagicNumber")
+	@NotNull
+	private static byte[] hexadecimalDigitValues()
+	{
+		final byte[] hexadecimalDigitValues = new byte[128];
+		Arrays.fill(hexadecimalDigitValues, (byte) NotAHexadecimalDigit);
+		for (byte value = 0; value < 16; value++)
+		{
+			hexadecimalDigitValues[HexadecimalCase.UpperCase.digits[value]] = value;
+			hexadecimalDigitValues[HexadecimalCase.LowerCase.digits[value]] = value;
+		}
+		return hexadecimalDigitValues;
+	}
+
+	@NotNull
+	public static char[] hexEncode(@NotNull final byte[] value, @NotNull final HexadecimalCase hexadecimalCase)
+	{
+		final char[] encoded = new char[value.length << 1];
+		hexEncode(value, 0, value.length, encoded, 0, hexadecimalCase);
+		return encoded;
+	}
+
+	// Returns destinationOffset after the last char written
+	public static int hexEncode(@NotNull final byte[] value, final int offset, final int length, @NotNull final char[] destination, final int destinationOffset, @NotNull final HexadecimalCase hexadecimalCase)
+	{
+		final char[] pairs = hexadecimalCase.pairs;
+		int position = destinationOffset;
+		final int endIndex = offset + length;
+		for (int index = offset; index < endIndex; index++)
+		{
+			final int pairIndex = (value[index] & 0xFF) << 1;
+			destination[position++] = pairs[pairIndex];
+			destination[position++] = pairs[pairIndex + 1];
+		}
+		return position;
+	}
+
+	// Writes ASCII; returns destinationOffset after the last byte written
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static int hexEncode(@NotNull final byte[] value, final int offset, final int length, @NotNull final byte[] destination, final int destinationOffset, @NotNull final HexadecimalCase hexadecimalCase)
+	{
+		final char[] pairs = hexadecimalCase.pairs;
+		int position = destinationOffset;
+		final int endIndex = offset + length;
+		for (int index = offset; index < endIndex; index++)
+		{
+			final int pairIndex = (value[index] & 0xFF) << 1;
+			destination[position++] = (byte) pairs[pairIndex];
+			destination[position++] = (byte) pairs[pairIndex + 1];
+		}
+		return position;
+	}
+
+	public static void hexEncode(@NotNull final byte[] value, final int offset, final int length, @NotNull final Appendable appendable, @NotNull final HexadecimalCase hexadecimalCase) throws IOException
+	{
+		final char[] pairs = hexadecimalCase.pairs;
+		final int endIndex = offset + length;
+		for (int index = offset; index < endIndex; index++)
+		{
+			final int pairIndex = (value[index] & 0xFF) << 1;
+			appendable.append(pairs[pairIndex]).append(pairs[pairIndex + 1]);
+		}
+	}
+
+	// Consumes value from its position to its limit
+	public static void hexEncode(@NotNull final ByteBuffer value, @NotNull final Appendable appendable, @NotNull final HexadecimalCase hexadecimalCase) throws IOException
+	{
+		final char[] pairs = hexadecimalCase.pairs;
+		final int endIndex = value.limit();
+		for (int index = value.position(); index < endIndex; index++)
+		{
+			final int pairIndex = (value.get(index) & 0xFF) << 1;
+			appendable.append(pairs[pairIndex]).append(pairs[pairIndex + 1]);
+		}
+		value.position(endIndex);
+	}
+
+	// Consumes value from its position to its limit, writing ASCII; destination must have twice as many bytes remaining
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static void hexEncode(@NotNull final ByteBuffer value, @NotNull final ByteBuffer destination, @NotNull final HexadecimalCase hexadecimalCase)
+	{
+		if (destination.remaining() < value.remaining() << 1)
+		{
+			throw new BufferOverflowException();
+		}
+		final char[] pairs = hexadecimalCase.pairs;
+		final int endIndex = value.limit();
+		int position = destination.position();
+		for (int index = value.position(); index < endIndex; index++)
+		{
+			final int pairIndex = (value.get(index) & 0xFF) << 1;
+			destination.put(position++, (byte) pairs[pairIndex]);
+			destination.put(position++, (byte) pairs[pairIndex + 1]);
+		}
+		destination.position(position);
+		value.position(endIndex);
+	}
+
+	@NotNull
+	public static byte[] hexDecode(@NotNull final CharSequence value)
+	{
+		final byte[] decoded = new byte[value.length() >>> 1];
+		final int result = hexDecode(value, 0, value.length(), decoded, 0);
+		if (result < 0)
+		{
+			throw new IllegalArgumentException(format("value contains an invalid or unpaired hexadecimal digit at index '%1$s'", ~result));
+		}
+		return decoded;
+	}
+
+	// Either case is accepted; returns the number of bytes written, or ~index of the first invalid or unpaired digit
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static int hexDecode(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int destinationOffset)
+	{
+		int position = destinationOffset;
+		int index = fromIndex;
+		while (index < toIndex)
+		{
+			if (index + 1 == toIndex)
+			{
+				return ~index;
+			}
+			final int high = hexadecimalDigitValue(value.charAt(index));
+			if (high == NotAHexadecimalDigit)
+			{
+				return ~index;
+			}
+			final int low = hexadecimalDigitValue(value.charAt(index + 1));
+			if (low == NotAHexadecimalDigit)
+			{
+				return ~(index + 1);
+			}
+			destination[position++] = (byte) ((high << 4) | low);
+			index += 2;
+		}
+		return position - destinationOffset;
+	}
+
+	// Decodes ASCII hexadecimal digits, in either case; returns the number of bytes written, or ~index of the first invalid or unpaired digit
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static int hexDecode(@NotNull final byte[] value, final int offset, final int length, @NotNull final byte[] destination, final int destinationOffset)
+	{
+		int position = destinationOffset;
+		int index = offset;
+		final int endIndex = offset + length;
+		while (index < endIndex)
+		{
+			if (index + 1 == endIndex)
+			{
+				return ~index;
+			}
+			final int high = hexadecimalDigitValue((char) value[index]);
+			if (high == NotAHexadecimalDigit)
+			{
+				return ~index;
+			}
+			final int low = hexadecimalDigitValue((char) value[index + 1]);
+			if (low == NotAHexadecimalDigit)
+			{
+				return ~(index + 1);
+			}
+			destination[position++] = (byte) ((high << 4) | low);
+			index += 2;
+		}
+		return position - destinationOffset;
+	}
+
+	private static int hexadecimalDigitValue(final char digit)
+	{
+		return digit < HexadecimalDigitValues.length ? HexadecimalDigitValues[digit] : NotAHexadecimalDigit;
+	}
+
 	@SuppressWarnings("MagicNumber")
 	@NotNull
 	public static String zeroPaddedUpperCaseHexString(final byte value)
 	{
-		return UpperCaseHexadecimalBytes[value + 128];
+		return UpperCaseHexadecimalBytes[value & 0xFF];
 	}
 
 	@SuppressWarnings("MagicNumber")
@@ -147,6 +361,525 @@ public final class Formatting
 		return new String(leftPadded);
 	}
 
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final StringBuilder stringBuilder, final byte value)
+	{
+		appendUpperCaseHexDigits(stringBuilder, value & 0xFF, 2);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final StringBuilder stringBuilder, final short value)
+	{
+		appendUpperCaseHexDigits(stringBuilder, value & 0xFFFF, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final StringBuilder stringBuilder, final char value)
+	{
+		appendUpperCaseHexDigits(stringBuilder, value, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final StringBuilder stringBuilder, final int value)
+	{
+		appendUpperCaseHexDigits(stringBuilder, value & 0xFFFF_FFFFL, 8);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final StringBuilder stringBuilder, final long value)
+	{
+		appendUpperCaseHexDigits(stringBuilder, value, 16);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final Appendable appendable, final byte value) throws IOException
+	{
+		appendUpperCaseHexDigits(appendable, value & 0xFF, 2);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final Appendable appendable, final short value) throws IOException
+	{
+		appendUpperCaseHexDigits(appendable, value & 0xFFFF, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final Appendable appendable, final char value) throws IOException
+	{
+		appendUpperCaseHexDigits(appendable, value, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final Appendable appendable, final int value) throws IOException
+	{
+		appendUpperCaseHexDigits(appendable, value & 0xFFFF_FFFFL, 8);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static void appendZeroPaddedUpperCaseHex(@NotNull final Appendable appendable, final long value) throws IOException
+	{
+		appendUpperCaseHexDigits(appendable, value, 16);
+	}
+
+	// Writes ASCII; returns offset after the last byte written
+	@SuppressWarnings("MagicNumber")
+	public static int writeZeroPaddedUpperCaseHex(@NotNull final byte[] destination, final int offset, final byte value)
+	{
+		return writeUpperCaseHexDigits(destination, offset, value & 0xFF, 2);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static int writeZeroPaddedUpperCaseHex(@NotNull final byte[] destination, final int offset, final short value)
+	{
+		return writeUpperCaseHexDigits(destination, offset, value & 0xFFFF, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static int writeZeroPaddedUpperCaseHex(@NotNull final byte[] destination, final int offset, final char value)
+	{
+		return writeUpperCaseHexDigits(destination, offset, value, 4);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static int writeZeroPaddedUpperCaseHex(@NotNull final byte[] destination, final int offset, final int value)
+	{
+		return writeUpperCaseHexDigits(destination, offset, value & 0xFFFF_FFFFL, 8);
+	}
+
+	@SuppressWarnings("MagicNumber")
+	public static int writeZeroPaddedUpperCaseHex(@NotNull final byte[] destination, final int offset, final long value)
+	{
+		return writeUpperCaseHexDigits(destination, offset, value, 16);
+	}
+
+	static void appendUpperCaseHex(@NotNull final StringBuilder stringBuilder, final long unsignedValue, final int minimumNumberOfDigits)
+	{
+		final int numberOfDigits = max(1, (Long.SIZE - numberOfLeadingZeros(unsignedValue) + 3) >>> 2);
+		for (int zeroDigits = minimumNumberOfDigits - numberOfDigits; zeroDigits > 0; zeroDigits--)
+		{
+			stringBuilder.append('0');
+		}
+		appendUpperCaseHexDigits(stringBuilder, unsignedValue, numberOfDigits);
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static void appendUpperCaseHexDigits(@NotNull final StringBuilder stringBuilder, final long unsignedValue, final int numberOfDigits)
+	{
+		for (int shift = (numberOfDigits - 1) << 2; shift >= 0; shift -= 4)
+		{
+			stringBuilder.append(UpperCaseHexadecimalDigits[(int) ((unsignedValue >>> shift) & LongMask)]);
+		}
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static void appendUpperCaseHexDigits(@NotNull final Appendable appendable, final long unsignedValue, final int numberOfDigits) throws IOException
+	{
+		for (int shift = (numberOfDigits - 1) << 2; shift >= 0; shift -= 4)
+		{
+			appendable.append(UpperCaseHexadecimalDigits[(int) ((unsignedValue >>> shift) & LongMask)]);
+		}
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static int writeUpperCaseHexDigits(@NotNull final byte[] destination, final int offset, final long unsignedValue, final int numberOfDigits)
+	{
+		final int endIndex = offset + numberOfDigits;
+		long remaining = unsignedValue;
+		for (int index = endIndex - 1; index >= offset; index--)
+		{
+			destination[index] = (byte) UpperCaseHexadecimalDigits[(int) (remaining & LongMask)];
+			remaining >>>= 4;
+		}
+		return endIndex;
+	}
+
+	// Laid out as Double.toString() and Float.toString() do, but with the shortest significand that round-trips
+	public static void appendShortestDecimal(@NotNull final StringBuilder stringBuilder, final double value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			stringBuilder.append(nonFinite);
+			return;
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		appendShortestDecimal(stringBuilder, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	public static void appendShortestDecimal(@NotNull final StringBuilder stringBuilder, final float value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			stringBuilder.append(nonFinite);
+			return;
+		}
+		final long decimal = value == 0.0f ? 0L : ShortestDecimal.decimal(value);
+		appendShortestDecimal(stringBuilder, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	// Returns offset after the last char written; at most MaximumShortestDecimalLength chars are written
+	public static int writeShortestDecimal(@NotNull final char[] destination, final int offset, final double value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		return writeShortestDecimal(destination, offset, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	// Returns offset after the last char written; at most MaximumShortestDecimalLength chars are written
+	public static int writeShortestDecimal(@NotNull final char[] destination, final int offset, final float value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0f ? 0L : ShortestDecimal.decimal(value);
+		return writeShortestDecimal(destination, offset, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	// Writes ASCII; returns offset after the last byte written; at most MaximumShortestDecimalLength bytes are written
+	public static int writeShortestDecimal(@NotNull final byte[] destination, final int offset, final double value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		return writeShortestDecimal(destination, offset, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	// Writes ASCII; returns offset after the last byte written; at most MaximumShortestDecimalLength bytes are written
+	public static int writeShortestDecimal(@NotNull final byte[] destination, final int offset, final float value)
+	{
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0f ? 0L : ShortestDecimal.decimal(value);
+		return writeShortestDecimal(destination, offset, isNegative(value), decimal >>> TagShift, decimalExponent(value, decimal));
+	}
+
+	// As '%.Nf' does: the shortest significand is rounded half-up to precision fraction digits; a float argument is widened first, as Formatter does
+	public static void appendFixedDecimal(@NotNull final StringBuilder stringBuilder, final double value, final int precision)
+	{
+		guardPrecision(precision);
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			stringBuilder.append(nonFinite);
+			return;
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		final int exponent = decimalExponent(value, decimal);
+		appendPlainDecimal(stringBuilder, isNegative(value), roundHalfUp(decimal >>> TagShift, exponent, precision), max(exponent, -precision), precision);
+	}
+
+	// Returns offset after the last char written; a value of magnitude below 10^N writes at most N + precision + 2 chars
+	public static int writeFixedDecimal(@NotNull final char[] destination, final int offset, final double value, final int precision)
+	{
+		guardPrecision(precision);
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		final int exponent = decimalExponent(value, decimal);
+		return writePlainDecimal(destination, offset, isNegative(value), roundHalfUp(decimal >>> TagShift, exponent, precision), max(exponent, -precision), precision);
+	}
+
+	// Writes ASCII; returns offset after the last byte written; a value of magnitude below 10^N writes at most N + precision + 2 bytes
+	public static int writeFixedDecimal(@NotNull final byte[] destination, final int offset, final double value, final int precision)
+	{
+		guardPrecision(precision);
+		final String nonFinite = nonFinite(value);
+		if (nonFinite != null)
+		{
+			return writeNonFinite(destination, offset, nonFinite);
+		}
+		final long decimal = value == 0.0 ? 0L : ShortestDecimal.decimal(value);
+		final int exponent = decimalExponent(value, decimal);
+		return writePlainDecimal(destination, offset, isNegative(value), roundHalfUp(decimal >>> TagShift, exponent, precision), max(exponent, -precision), precision);
+	}
+
+	private static void guardPrecision(final int precision)
+	{
+		if (precision < 0)
+		{
+			throw new IllegalArgumentException(format("precision '%1$s' can not be negative", precision));
+		}
+	}
+
+	@Nullable
+	@NonNls
+	private static String nonFinite(final double value)
+	{
+		if (value != value)
+		{
+			return "NaN";
+		}
+		if (value == Double.POSITIVE_INFINITY)
+		{
+			return "Infinity";
+		}
+		if (value == Double.NEGATIVE_INFINITY)
+		{
+			return "-Infinity";
+		}
+		return null;
+	}
+
+	private static boolean isNegative(final double value)
+	{
+		return Double.doubleToRawLongBits(value) < 0L;
+	}
+
+	private static boolean isNegative(final float value)
+	{
+		return Float.floatToRawIntBits(value) < 0;
+	}
+
+	private static int writeNonFinite(@NotNull final char[] destination, final int offset, @NotNull @NonNls final String nonFinite)
+	{
+		final int length = nonFinite.length();
+		nonFinite.getChars(0, length, destination, offset);
+		return offset + length;
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static int writeNonFinite(@NotNull final byte[] destination, final int offset, @NotNull @NonNls final String nonFinite)
+	{
+		final int length = nonFinite.length();
+		for (int index = 0; index < length; index++)
+		{
+			destination[offset + index] = (byte) nonFinite.charAt(index);
+		}
+		return offset + length;
+	}
+
+	// Returns the significand scaled to 10^-precision if it had more fraction digits than that
+	private static long roundHalfUp(final long significand, final int exponent, final int precision)
+	{
+		final int droppedDigits = -exponent - precision;
+		if (droppedDigits <= 0)
+		{
+			return significand;
+		}
+		if (droppedDigits > numberOfDecimalDigits(significand))
+		{
+			return 0L;
+		}
+		final long divisor = PowersOfTen[droppedDigits];
+		final long quotient = significand / divisor;
+		return significand - quotient * divisor >= divisor >>> 1 ? quotient + 1L : quotient;
+	}
+
+	private static int numberOfDecimalDigits(final long nonNegative)
+	{
+		final int estimate = (Long.SIZE - numberOfLeadingZeros(nonNegative)) * 1233 >>> 12;
+		return nonNegative >= PowersOfTen[estimate] ? estimate + 1 : max(1, estimate);
+	}
+
+	private static int numberOfTrailingDecimalZeros(final long significand)
+	{
+		if (significand == 0L)
+		{
+			return 0;
+		}
+		int numberOfTrailingZeros = 0;
+		long remaining = significand;
+		while (remaining % 10L == 0L)
+		{
+			remaining /= 10L;
+			numberOfTrailingZeros++;
+		}
+		return numberOfTrailingZeros;
+	}
+
+	// Double.toString() uses plain notation for magnitudes in [10^-3, 10^7)
+	private static boolean isPlain(final int scientificExponent)
+	{
+		return scientificExponent >= -3 && scientificExponent < 7;
+	}
+
+	private static int plainDecimalLength(final boolean isNegative, final long significand, final int exponent, final int fractionDigits)
+	{
+		final int numberOfDigits = numberOfDecimalDigits(significand);
+		final int integerDigits = exponent >= 0 ? numberOfDigits + exponent : max(1, numberOfDigits + exponent);
+		return (isNegative ? 1 : 0) + integerDigits + (fractionDigits == 0 ? 0 : fractionDigits + 1);
+	}
+
+	private static void appendShortestDecimal(@NotNull final StringBuilder stringBuilder, final boolean isNegative, final long significand, final int exponent)
+	{
+		final int numberOfTrailingZeros = numberOfTrailingDecimalZeros(significand);
+		final long digits = significand / PowersOfTen[numberOfTrailingZeros];
+		final int digitsExponent = exponent + numberOfTrailingZeros;
+		final int numberOfDigits = numberOfDecimalDigits(digits);
+		final int scientificExponent = digitsExponent + numberOfDigits - 1;
+		if (isPlain(scientificExponent))
+		{
+			appendPlainDecimal(stringBuilder, isNegative, digits, digitsExponent, max(1, -digitsExponent));
+			return;
+		}
+		appendPlainDecimal(stringBuilder, isNegative, digits, 1 - numberOfDigits, max(1, numberOfDigits - 1));
+		stringBuilder.append(ExponentMarker).append(scientificExponent);
+	}
+
+	private static int writeShortestDecimal(@NotNull final char[] destination, final int offset, final boolean isNegative, final long significand, final int exponent)
+	{
+		final int numberOfTrailingZeros = numberOfTrailingDecimalZeros(significand);
+		final long digits = significand / PowersOfTen[numberOfTrailingZeros];
+		final int digitsExponent = exponent + numberOfTrailingZeros;
+		final int numberOfDigits = numberOfDecimalDigits(digits);
+		final int scientificExponent = digitsExponent + numberOfDigits - 1;
+		if (isPlain(scientificExponent))
+		{
+			return writePlainDecimal(destination, offset, isNegative, digits, digitsExponent, max(1, -digitsExponent));
+		}
+		int position = writePlainDecimal(destination, offset, isNegative, digits, 1 - numberOfDigits, max(1, numberOfDigits - 1));
+		destination[position++] = ExponentMarker;
+		int remaining = scientificExponent;
+		if (remaining < 0)
+		{
+			destination[position++] = MinusSign;
+			remaining = -remaining;
+		}
+		final int endIndex = position + numberOfDecimalDigits(remaining);
+		position = endIndex;
+		do
+		{
+			destination[--position] = (char) (ZeroDigit + remaining % 10);
+			remaining /= 10;
+		}
+		while (remaining != 0);
+		return endIndex;
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static int writeShortestDecimal(@NotNull final byte[] destination, final int offset, final boolean isNegative, final long significand, final int exponent)
+	{
+		final int numberOfTrailingZeros = numberOfTrailingDecimalZeros(significand);
+		final long digits = significand / PowersOfTen[numberOfTrailingZeros];
+		final int digitsExponent = exponent + numberOfTrailingZeros;
+		final int numberOfDigits = numberOfDecimalDigits(digits);
+		final int scientificExponent = digitsExponent + numberOfDigits - 1;
+		if (isPlain(scientificExponent))
+		{
+			return writePlainDecimal(destination, offset, isNegative, digits, digitsExponent, max(1, -digitsExponent));
+		}
+		final int position = writePlainDecimal(destination, offset, isNegative, digits, 1 - numberOfDigits, max(1, numberOfDigits - 1));
+		destination[position] = (byte) ExponentMarker;
+		return writePaddedDecimal(destination, position + 1, scientificExponent, 0);
+	}
+
+	// Writes significand * 10^exponent right-to-left with exactly fractionDigits fraction digits, which must not be fewer than -exponent
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static void appendPlainDecimal(@NotNull final StringBuilder stringBuilder, final boolean isNegative, final long significand, final int exponent, final int fractionDigits)
+	{
+		final int start = stringBuilder.length();
+		final int endIndex = start + plainDecimalLength(isNegative, significand, exponent, fractionDigits);
+		stringBuilder.setLength(endIndex);
+		final int digitsStart = isNegative ? start + 1 : start;
+		long remaining = significand;
+		int place = -fractionDigits;
+		int position = endIndex;
+		while (position > digitsStart)
+		{
+			if (place == 0 && fractionDigits != 0)
+			{
+				stringBuilder.setCharAt(--position, DecimalPoint);
+			}
+			if (place < exponent)
+			{
+				stringBuilder.setCharAt(--position, ZeroDigit);
+			}
+			else
+			{
+				final long quotient = remaining / 10L;
+				stringBuilder.setCharAt(--position, (char) (ZeroDigit + (remaining - quotient * 10L)));
+				remaining = quotient;
+			}
+			place++;
+		}
+		if (isNegative)
+		{
+			stringBuilder.setCharAt(start, MinusSign);
+		}
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static int writePlainDecimal(@NotNull final char[] destination, final int offset, final boolean isNegative, final long significand, final int exponent, final int fractionDigits)
+	{
+		final int endIndex = offset + plainDecimalLength(isNegative, significand, exponent, fractionDigits);
+		final int digitsStart = isNegative ? offset + 1 : offset;
+		long remaining = significand;
+		int place = -fractionDigits;
+		int position = endIndex;
+		while (position > digitsStart)
+		{
+			if (place == 0 && fractionDigits != 0)
+			{
+				destination[--position] = DecimalPoint;
+			}
+			if (place < exponent)
+			{
+				destination[--position] = ZeroDigit;
+			}
+			else
+			{
+				final long quotient = remaining / 10L;
+				destination[--position] = (char) (ZeroDigit + (remaining - quotient * 10L));
+				remaining = quotient;
+			}
+			place++;
+		}
+		if (isNegative)
+		{
+			destination[offset] = MinusSign;
+		}
+		return endIndex;
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	private static int writePlainDecimal(@NotNull final byte[] destination, final int offset, final boolean isNegative, final long significand, final int exponent, final int fractionDigits)
+	{
+		final int endIndex = offset + plainDecimalLength(isNegative, significand, exponent, fractionDigits);
+		final int digitsStart = isNegative ? offset + 1 : offset;
+		long remaining = significand;
+		int place = -fractionDigits;
+		int position = endIndex;
+		while (position > digitsStart)
+		{
+			if (place == 0 && fractionDigits != 0)
+			{
+				destination[--position] = DecimalPoint;
+			}
+			if (place < exponent)
+			{
+				destination[--position] = ZeroDigit;
+			}
+			else
+			{
+				final long quotient = remaining / 10L;
+				destination[--position] = (byte) (ZeroDigit + (remaining - quotient * 10L));
+				remaining = quotient;
+			}
+			place++;
+		}
+		if (isNegative)
+		{
+			destination[offset] = MinusSign;
+		}
+		return endIndex;
+	}
+
 	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
 	@NonNls
 	public static void formatPrintLineAndFlushWhilstSynchronized(@NotNull final PrintStream printStream, @NotNull@NonNls final String template, @NotNull @NonNls final Object... arguments)
@@ -172,10 +905,17 @@ public final class Formatting
 	@NonNls
 	public static String format(@NotNull @NonNls final String template, @NotNull @NonNls final Object... arguments)
 	{
+		@Nullable final Object event = Enabled ? begin() : null;
+		final String formatted;
 		try(final Formatter formatter = new Formatter(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance))
 		{
-			return formatter.format(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance, template, arguments).toString();
+			formatted = formatter.format(NullLocaleIsInterpretedAsUsEnglishAndIsMoreEfficientThanSpecifyingALocaleInstance, template, arguments).toString();
+		}
+		if (Enabled)
+		{
+			end(event, InstrumentedOperation.Formatting, template.length(), formatted.length(), 0);
 		}
+		return formatted;
 	}
 
 	private Formatting()
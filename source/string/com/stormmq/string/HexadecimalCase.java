@@ -0,0 +1,49 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+public enum HexadecimalCase
+{
+	UpperCase("0123456789ABCDEF"),
+	LowerCase("0123456789abcdef"),
+	;
+
+	@NotNull final char[] digits;
+
+	// Both digits of every byte value, so that each byte is encoded with one table index
+	@NotNull final char[] pairs;
+
+	@SuppressWarnings("MagicNumber")
+	HexadecimalCase(@NotNull final String digits)
+	{
+		this.digits = digits.toCharArray();
+		pairs = new char[256 * 2];
+		for (int value = 0; value < 256; value++)
+		{
+			pairs[value << 1] = this.digits[value >>> 4];
+			pairs[(value << 1) + 1] = this.digits[value & 0x0F];
+		}
+	}
+}
@@ -0,0 +1,186 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import static java.lang.Boolean.getBoolean;
+
+// Opt-in counters, and Flight Recorder events, for encoding, formatting and toString(); enable with -Dcom.stormmq.string.instrumentation=true
+// Enabled is read once into a static final, so when it is false the JIT removes every instrumented branch and the cost is nil
+// Flight Recorder events additionally need -Dcom.stormmq.string.instrumentation.jfr=true and the optional string-jfr module on the class path; it is only loaded then, so a JVM without jdk.jfr is unaffected
+public final class Instrumentation
+{
+	@NonNls public static final String EnabledProperty = "com.stormmq.string.instrumentation";
+	@NonNls public static final String FlightRecorderEnabledProperty = "com.stormmq.string.instrumentation.jfr";
+
+	@NonNls private static final String FlightRecorderEventsClassName = "com.stormmq.string.FlightRecorderEvents";
+
+	public static final boolean Enabled = getBoolean(EnabledProperty);
+	@Nullable private static final InstrumentationEvents FlightRecorderEvents = Enabled && getBoolean(FlightRecorderEnabledProperty) ? flightRecorderEvents() : null;
+
+	private static final int NumberOfOperations = InstrumentedOperation.values().length;
+	@NotNull private static final LongAdder[] Calls = longAdders();
+	@NotNull private static final LongAdder[] InputLengths = longAdders();
+	@NotNull private static final LongAdder[] OutputLengths = longAdders();
+	@NotNull private static final LongAdder[] MalformedInputs = longAdders();
+
+	private Instrumentation()
+	{
+	}
+
+	public static long calls(@NotNull final InstrumentedOperation instrumentedOperation)
+	{
+		return Calls[instrumentedOperation.ordinal()].sum();
+	}
+
+	// In chars, or, for ToString, zero
+	public static long inputLength(@NotNull final InstrumentedOperation instrumentedOperation)
+	{
+		return InputLengths[instrumentedOperation.ordinal()].sum();
+	}
+
+	// In bytes for Utf8Encoding and ModifiedUtf8Encoding, otherwise in chars
+	public static long outputLength(@NotNull final InstrumentedOperation instrumentedOperation)
+	{
+		return OutputLengths[instrumentedOperation.ordinal()].sum();
+	}
+
+	public static long malformedInputs(@NotNull final InstrumentedOperation instrumentedOperation)
+	{
+		return MalformedInputs[instrumentedOperation.ordinal()].sum();
+	}
+
+	public static void reset()
+	{
+		for (int index = 0; index < NumberOfOperations; index++)
+		{
+			Calls[index].reset();
+			InputLengths[index].reset();
+			OutputLengths[index].reset();
+			MalformedInputs[index].reset();
+		}
+	}
+
+	// Only call if Enabled; returns a Flight Recorder event, typed as Object so that callers do not load jdk.jfr, or null
+	@Nullable
+	static Object begin()
+	{
+		return FlightRecorderEvents == null ? null : FlightRecorderEvents.begin();
+	}
+
+	// Only call if Enabled; event is that returned by begin()
+	static void end(@Nullable final Object event, @NotNull final InstrumentedOperation instrumentedOperation, final long inputLength, final long outputLength, final int malformedInputs)
+	{
+		final int ordinal = instrumentedOperation.ordinal();
+		Calls[ordinal].increment();
+		InputLengths[ordinal].add(inputLength);
+		OutputLengths[ordinal].add(outputLength);
+		if (malformedInputs != 0)
+		{
+			MalformedInputs[ordinal].add(malformedInputs);
+		}
+		if (event != null && FlightRecorderEvents != null)
+		{
+			FlightRecorderEvents.end(event, instrumentedOperation, inputLength, outputLength, malformedInputs);
+		}
+	}
+
+	// Only call if Enabled; a failure is recorded as a call with no output, and as one malformed input if it is an InvalidUtf16StringException
+	@NotNull
+	static <R, X extends Exception> R instrument(@NotNull final InstrumentedOperation instrumentedOperation, final long inputLength, @NotNull final Measured<R, X> measured, @NotNull final ToLongFunction<? super R> outputLength) throws X
+	{
+		@Nullable final Object event = begin();
+		final R result;
+		try
+		{
+			result = measured.measure();
+		}
+		catch (final Exception e)
+		{
+			end(event, instrumentedOperation, inputLength, 0L, e instanceof InvalidUtf16StringException ? 1 : 0);
+			throw e;
+		}
+		end(event, instrumentedOperation, inputLength, outputLength.applyAsLong(result), 0);
+		return result;
+	}
+
+	// Only call if Enabled
+	@NotNull
+	static <X extends Exception> CountingMalformedInputUser<X> countingMalformedInputUser(@NotNull final MalformedInputUser<X> malformedInputUser)
+	{
+		return new CountingMalformedInputUser<>(malformedInputUser);
+	}
+
+	@NotNull
+	private static LongAdder[] longAdders()
+	{
+		final LongAdder[] longAdders = new LongAdder[NumberOfOperations];
+		for (int index = 0; index < NumberOfOperations; index++)
+		{
+			longAdders[index] = new LongAdder();
+		}
+		return longAdders;
+	}
+
+	// Null if the string-jfr module is not on the class path or this JVM lacks jdk.jfr
+	@Nullable
+	private static InstrumentationEvents flightRecorderEvents()
+	{
+		try
+		{
+			return Class.forName(FlightRecorderEventsClassName, true, Instrumentation.class.getClassLoader()).asSubclass(InstrumentationEvents.class).getDeclaredConstructor().newInstance();
+		}
+		catch (final ReflectiveOperationException | LinkageError | ClassCastException ignored)
+		{
+			return null;
+		}
+	}
+
+	@FunctionalInterface
+	interface Measured<R, X extends Exception>
+	{
+		@NotNull
+		R measure() throws X;
+	}
+
+	static final class CountingMalformedInputUser<X extends Exception> implements MalformedInputUser<X>
+	{
+		@NotNull private final MalformedInputUser<X> malformedInputUser;
+		int count;
+
+		private CountingMalformedInputUser(@NotNull final MalformedInputUser<X> malformedInputUser)
+		{
+			this.malformedInputUser = malformedInputUser;
+		}
+
+		@Override
+		public void useMalformedInput(final int index, final int length) throws X
+		{
+			count++;
+			malformedInputUser.useMalformedInput(index, length);
+		}
+	}
+}
@@ -0,0 +1,311 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.InvalidUtf8StringException.invalidSequence;
+import static com.stormmq.string.Utf8Decoder.codePoint;
+import static com.stormmq.string.Utf8Decoder.sequenceLength;
+import static java.lang.Character.*;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.min;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// A bounded, thread safe alternative to String.intern() that can look up slices of CharSequences and UTF-8 bytes without first creating a String
+// Entries are held in sets of Ways, indexed by hash; a full set evicts by CLOCK (second chance), so frequently used values survive
+// Sets are guarded by striped locks, held only whilst searching or replacing within one set
+public final class InternPool
+{
+	private static final int Ways = 8;
+	private static final int WaysMask = Ways - 1;
+	private static final int MaximumNumberOfLocks = 64;
+	private static final int HashMultiplier = 31;
+
+	@NotNull private final String[] entries;
+	@NotNull private final int[] hashes;
+	@NotNull private final boolean[] referenced;
+	@NotNull private final byte[] hands;
+	@NotNull private final Object[] locks;
+	private final int setMask;
+	private final int lockMask;
+	@NotNull private final LongAdder hits;
+	@NotNull private final LongAdder misses;
+	@NotNull private final LongAdder evictions;
+
+	// capacity is rounded up to a power of two of at least Ways
+	public InternPool(final int capacity)
+	{
+		if (capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException(format("capacity '%1$s' must be between 1 and 2^30", capacity));
+		}
+		final int numberOfSets = roundUpToPowerOfTwo((capacity + WaysMask) / Ways);
+		final int numberOfEntries = numberOfSets * Ways;
+		entries = new String[numberOfEntries];
+		hashes = new int[numberOfEntries];
+		referenced = new boolean[numberOfEntries];
+		hands = new byte[numberOfSets];
+		final int numberOfLocks = min(numberOfSets, MaximumNumberOfLocks);
+		locks = new Object[numberOfLocks];
+		for (int index = 0; index < numberOfLocks; index++)
+		{
+			locks[index] = new Object();
+		}
+		setMask = numberOfSets - 1;
+		lockMask = numberOfLocks - 1;
+		hits = new LongAdder();
+		misses = new LongAdder();
+		evictions = new LongAdder();
+	}
+
+	private static int roundUpToPowerOfTwo(final int value)
+	{
+		final int highestOneBit = highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	@NotNull
+	public String intern(@NotNull final CharSequence value)
+	{
+		return intern(value, 0, value.length());
+	}
+
+	// endIndex is exclusive; eg use with StringUtilities.splitIntoTokens()
+	@NotNull
+	public String intern(@NotNull final CharSequence value, final int startIndex, final int endIndex)
+	{
+		if (startIndex < 0 || endIndex > value.length() || startIndex > endIndex)
+		{
+			throw new StringIndexOutOfBoundsException(format("startIndex '%1$s' and endIndex '%2$s' are not within length '%3$s'", startIndex, endIndex, value.length()));
+		}
+
+		// The same hash as String.hashCode() of the slice
+		int hash = 0;
+		for (int index = startIndex; index < endIndex; index++)
+		{
+			hash = HashMultiplier * hash + value.charAt(index);
+		}
+
+		final int length = endIndex - startIndex;
+		final int set = set(hash);
+		synchronized (lock(set))
+		{
+			final int base = set * Ways;
+			for (int way = 0; way < Ways; way++)
+			{
+				final int entryIndex = base + way;
+				@Nullable final String entry = entries[entryIndex];
+				if (entry != null && hashes[entryIndex] == hash && entry.length() == length && regionEquals(entry, value, startIndex))
+				{
+					return hit(entryIndex, entry);
+				}
+			}
+			return miss(set, hash, value.subSequence(startIndex, endIndex).toString());
+		}
+	}
+
+	// Bytes must be valid UTF-8; an invalid sequence is reported rather than replaced
+	@NotNull
+	public String internUtf8(@NotNull final byte[] value, final int offset, final int length) throws InvalidUtf8StringException
+	{
+		final int endIndex = offset + length;
+		if (offset < 0 || length < 0 || endIndex > value.length)
+		{
+			throw new ArrayIndexOutOfBoundsException(format("offset '%1$s' and length '%2$s' are not within length '%3$s'", offset, length, value.length));
+		}
+
+		// The same hash as String.hashCode() of the decoded bytes
+		int hash = 0;
+		int utf16Length = 0;
+		int index = offset;
+		while (index < endIndex)
+		{
+			final byte lead = value[index];
+			if (lead >= 0)
+			{
+				hash = HashMultiplier * hash + lead;
+				utf16Length++;
+				index++;
+				continue;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				throw invalidSequence(index);
+			}
+			final int codePoint = codePoint(value, index, sequenceLength);
+			if (codePoint >= MIN_SUPPLEMENTARY_CODE_POINT)
+			{
+				hash = HashMultiplier * (HashMultiplier * hash + highSurrogate(codePoint)) + lowSurrogate(codePoint);
+				utf16Length += 2;
+			}
+			else
+			{
+				hash = HashMultiplier * hash + codePoint;
+				utf16Length++;
+			}
+			index += sequenceLength;
+		}
+
+		final int set = set(hash);
+		synchronized (lock(set))
+		{
+			final int base = set * Ways;
+			for (int way = 0; way < Ways; way++)
+			{
+				final int entryIndex = base + way;
+				@Nullable final String entry = entries[entryIndex];
+				if (entry != null && hashes[entryIndex] == hash && entry.length() == utf16Length && utf8Equals(entry, value, offset, endIndex))
+				{
+					return hit(entryIndex, entry);
+				}
+			}
+			return miss(set, hash, new String(value, offset, length, UTF_8));
+		}
+	}
+
+	public long hits()
+	{
+		return hits.sum();
+	}
+
+	public long misses()
+	{
+		return misses.sum();
+	}
+
+	public long evictions()
+	{
+		return evictions.sum();
+	}
+
+	private int set(final int hash)
+	{
+		return (hash ^ (hash >>> 16)) & setMask;
+	}
+
+	@NotNull
+	private Object lock(final int set)
+	{
+		return locks[set & lockMask];
+	}
+
+	@NotNull
+	private String hit(final int entryIndex, @NotNull final String entry)
+	{
+		referenced[entryIndex] = true;
+		hits.increment();
+		return entry;
+	}
+
+	@NotNull
+	private String miss(final int set, final int hash, @NotNull final String value)
+	{
+		misses.increment();
+		final int entryIndex = victim(set);
+		entries[entryIndex] = value;
+		hashes[entryIndex] = hash;
+		referenced[entryIndex] = false;
+		return value;
+	}
+
+	private int victim(final int set)
+	{
+		final int base = set * Ways;
+		for (int way = 0; way < Ways; way++)
+		{
+			if (entries[base + way] == null)
+			{
+				return base + way;
+			}
+		}
+
+		int hand = hands[set];
+		while (true)
+		{
+			final int entryIndex = base + hand;
+			hand = (hand + 1) & WaysMask;
+			if (referenced[entryIndex])
+			{
+				referenced[entryIndex] = false;
+			}
+			else
+			{
+				hands[set] = (byte) hand;
+				evictions.increment();
+				return entryIndex;
+			}
+		}
+	}
+
+	private static boolean regionEquals(@NotNull final String entry, @NotNull final CharSequence value, final int startIndex)
+	{
+		final int length = entry.length();
+		for (int index = 0; index < length; index++)
+		{
+			if (entry.charAt(index) != value.charAt(startIndex + index))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Bytes have already been validated and entry has the same UTF-16 length
+	private static boolean utf8Equals(@NotNull final String entry, @NotNull final byte[] value, final int offset, final int endIndex)
+	{
+		int charIndex = 0;
+		int index = offset;
+		while (index < endIndex)
+		{
+			final byte lead = value[index];
+			if (lead >= 0)
+			{
+				if (entry.charAt(charIndex++) != lead)
+				{
+					return false;
+				}
+				index++;
+				continue;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			final int codePoint = codePoint(value, index, sequenceLength);
+			if (codePoint >= MIN_SUPPLEMENTARY_CODE_POINT)
+			{
+				if (entry.charAt(charIndex++) != highSurrogate(codePoint) || entry.charAt(charIndex++) != lowSurrogate(codePoint))
+				{
+					return false;
+				}
+			}
+			else if (entry.charAt(charIndex++) != codePoint)
+			{
+				return false;
+			}
+			index += sequenceLength;
+		}
+		return true;
+	}
+}
@@ -24,8 +24,40 @@ package com.stormmq.string;
 
 import org.jetbrains.annotations.NotNull;
 
+import static com.stormmq.string.Formatting.format;
+import static java.lang.Character.isLowSurrogate;
+
 public final class InvalidUtf16StringException extends Exception
 {
+	@NotNull
+	static InvalidUtf16StringException missingFinalLowSurrogate(final int index)
+	{
+		return new InvalidUtf16StringException(format("String value contains a missing final low surrogate after index '%1$s'", index));
+	}
+
+	@NotNull
+	static InvalidUtf16StringException highSurrogateWithoutFollowingLowSurrogate(final int index)
+	{
+		return new InvalidUtf16StringException(format("String value contains a high surrogate without a following low surrogate at index '%1$s'", index));
+	}
+
+	@NotNull
+	static InvalidUtf16StringException lowSurrogateWithoutPrecedingHighSurrogate(final int index)
+	{
+		return new InvalidUtf16StringException(format("String value contains a low surrogate without a preceding high surrogate at index '%1$s'", index));
+	}
+
+	// index is that of a lone surrogate
+	@NotNull
+	static InvalidUtf16StringException loneSurrogate(final char character, final int index, final int toIndex)
+	{
+		if (isLowSurrogate(character))
+		{
+			return lowSurrogateWithoutPrecedingHighSurrogate(index);
+		}
+		return index + 1 == toIndex ? missingFinalLowSurrogate(index) : highSurrogateWithoutFollowingLowSurrogate(index);
+	}
+
 	public InvalidUtf16StringException(@NotNull final String message)
 	{
 		super(message);
@@ -0,0 +1,46 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import static com.stormmq.string.Formatting.format;
+
+public final class InvalidUtf8StringException extends Exception
+{
+	@NotNull
+	static InvalidUtf8StringException invalidSequence(final int index)
+	{
+		return new InvalidUtf8StringException(format("Bytes contain an invalid, overlong, surrogate or truncated UTF-8 sequence at index '%1$s'", index));
+	}
+
+	public InvalidUtf8StringException(@NotNull final String message)
+	{
+		super(message);
+	}
+
+	public InvalidUtf8StringException(@NotNull final String message, @NotNull final Exception cause)
+	{
+		super(message, cause);
+	}
+}
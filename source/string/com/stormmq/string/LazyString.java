@@ -0,0 +1,80 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.util.function.Supplier;
+
+// Defers rendering until the text is first needed, eg when a logger decides a message is enabled; threads racing on first use may each render
+public final class LazyString implements CharSequence
+{
+	@NotNull
+	public static LazyString lazyString(@NotNull final Supplier<? extends CharSequence> renderer)
+	{
+		return new LazyString(renderer);
+	}
+
+	@NotNull private final Supplier<? extends CharSequence> renderer;
+
+	// Benignly racy, as String is immutable
+	@Nullable private String rendered;
+
+	private LazyString(@NotNull final Supplier<? extends CharSequence> renderer)
+	{
+		this.renderer = renderer;
+	}
+
+	@Override
+	public int length()
+	{
+		return toString().length();
+	}
+
+	@Override
+	public char charAt(final int index)
+	{
+		return toString().charAt(index);
+	}
+
+	@NotNull
+	@Override
+	public CharSequence subSequence(final int start, final int end)
+	{
+		return toString().subSequence(start, end);
+	}
+
+	@NotNull
+	@NonNls
+	@Override
+	public String toString()
+	{
+		@Nullable final String rendered = this.rendered;
+		if (rendered != null)
+		{
+			return rendered;
+		}
+		final String newlyRendered = renderer.get().toString();
+		this.rendered = newlyRendered;
+		return newlyRendered;
+	}
+}
@@ -0,0 +1,235 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.stormmq.string.DescriptorUser.ClassTypeCode;
+import static com.stormmq.string.DescriptorUser.VoidTypeCode;
+import static com.stormmq.string.Formatting.format;
+import static java.util.Arrays.copyOf;
+
+// The parsed form of a method descriptor, eg '(ILjava/lang/String;)V'; types are indexed with parameters first and the result last
+// Hot descriptors are cached by methodDescriptor(); the cache is cleared wholesale when full rather than tracking recency
+public final class MethodDescriptor
+{
+	private static final int MaximumCacheSize = 4096;
+	@NotNull private static final ConcurrentHashMap<String, MethodDescriptor> Cache = new ConcurrentHashMap<>(64);
+
+	@NotNull
+	public static MethodDescriptor methodDescriptor(@NotNull @NonNls final String descriptor)
+	{
+		@Nullable final MethodDescriptor cached = Cache.get(descriptor);
+		if (cached != null)
+		{
+			return cached;
+		}
+
+		final MethodDescriptor methodDescriptor = parseMethodDescriptor(descriptor);
+		if (Cache.size() >= MaximumCacheSize)
+		{
+			Cache.clear();
+		}
+		Cache.put(descriptor, methodDescriptor);
+		return methodDescriptor;
+	}
+
+	@NotNull
+	public static MethodDescriptor parseMethodDescriptor(@NotNull @NonNls final String descriptor)
+	{
+		final Builder builder = new Builder();
+		final int result = builder.parseMethodDescriptor(descriptor);
+		if (result < 0)
+		{
+			throw new IllegalArgumentException(format("descriptor '%1$s' is invalid at index '%2$s'", descriptor, ~result));
+		}
+		return builder.build(descriptor);
+	}
+
+	@NotNull @NonNls private final String descriptor;
+	@NotNull private final char[] typeCodes;
+	@NotNull private final int[] arrayDimensions;
+	@NotNull private final int[] startIndices;
+	@NotNull private final int[] endIndices;
+	private final int parameterSlots;
+
+	private MethodDescriptor(@NotNull @NonNls final String descriptor, @NotNull final char[] typeCodes, @NotNull final int[] arrayDimensions, @NotNull final int[] startIndices, @NotNull final int[] endIndices, final int parameterSlots)
+	{
+		this.descriptor = descriptor;
+		this.typeCodes = typeCodes;
+		this.arrayDimensions = arrayDimensions;
+		this.startIndices = startIndices;
+		this.endIndices = endIndices;
+		this.parameterSlots = parameterSlots;
+	}
+
+	public int numberOfParameters()
+	{
+		return typeCodes.length - 1;
+	}
+
+	// long and double parameters occupy two local variable slots; does not include 'this'
+	public int parameterSlots()
+	{
+		return parameterSlots;
+	}
+
+	// One of the primitive type codes, 'L' for a class type or 'V' for a void result
+	public char typeCode(final int index)
+	{
+		return typeCodes[index];
+	}
+
+	public int arrayDimensions(final int index)
+	{
+		return arrayDimensions[index];
+	}
+
+	// null for primitive types; for an array of class types, the internal name of the element type
+	@Nullable
+	public String internalTypeName(final int index)
+	{
+		if (typeCodes[index] != ClassTypeCode)
+		{
+			return null;
+		}
+		return descriptor.substring(startIndices[index], endIndices[index]);
+	}
+
+	public int resultIndex()
+	{
+		return typeCodes.length - 1;
+	}
+
+	public boolean returnsVoid()
+	{
+		return typeCodes[resultIndex()] == VoidTypeCode;
+	}
+
+	// Replays the events of parsing; indices are into toString()
+	public <X extends Exception> void visit(@NotNull final DescriptorUser<X> descriptorUser) throws X
+	{
+		final int resultIndex = resultIndex();
+		for (int index = 0; index <= resultIndex; index++)
+		{
+			if (index == resultIndex)
+			{
+				descriptorUser.endOfMethodParameters();
+			}
+			final char typeCode = typeCodes[index];
+			if (typeCode == ClassTypeCode)
+			{
+				descriptorUser.useClassType(arrayDimensions[index], startIndices[index], endIndices[index]);
+				descriptorUser.endOfClassType();
+			}
+			else
+			{
+				descriptorUser.usePrimitiveType(arrayDimensions[index], typeCode);
+			}
+		}
+	}
+
+	@Override
+	public boolean equals(@Nullable final Object o)
+	{
+		if (this == o)
+		{
+			return true;
+		}
+		if (o == null || getClass() != o.getClass())
+		{
+			return false;
+		}
+
+		final MethodDescriptor that = (MethodDescriptor) o;
+		return descriptor.equals(that.descriptor);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return descriptor.hashCode();
+	}
+
+	@Override
+	@NotNull
+	public String toString()
+	{
+		return descriptor;
+	}
+
+	private static final class Builder implements DescriptorUser<RuntimeException>
+	{
+		@NotNull private char[] typeCodes = new char[8];
+		@NotNull private int[] arrayDimensions = new int[8];
+		@NotNull private int[] startIndices = new int[8];
+		@NotNull private int[] endIndices = new int[8];
+		private int count;
+		private int slots;
+		private int parameterSlots;
+
+		@Override
+		public void usePrimitiveType(final int arrayDimensions, final char typeCode)
+		{
+			add(arrayDimensions, typeCode, 0, 0);
+			slots += arrayDimensions == 0 && (typeCode == 'J' || typeCode == 'D') ? 2 : 1;
+		}
+
+		@Override
+		public void useClassType(final int arrayDimensions, final int startIndex, final int endIndex)
+		{
+			add(arrayDimensions, ClassTypeCode, startIndex, endIndex);
+			slots++;
+		}
+
+		@Override
+		public void endOfMethodParameters()
+		{
+			parameterSlots = slots;
+		}
+
+		private void add(final int arrayDimensions, final char typeCode, final int startIndex, final int endIndex)
+		{
+			if (count == typeCodes.length)
+			{
+				final int newLength = count << 1;
+				typeCodes = copyOf(typeCodes, newLength);
+				this.arrayDimensions = copyOf(this.arrayDimensions, newLength);
+				startIndices = copyOf(startIndices, newLength);
+				endIndices = copyOf(endIndices, newLength);
+			}
+			typeCodes[count] = typeCode;
+			this.arrayDimensions[count] = arrayDimensions;
+			startIndices[count] = startIndex;
+			endIndices[count] = endIndex;
+			count++;
+		}
+
+		@NotNull
+		private MethodDescriptor build(@NotNull final String descriptor)
+		{
+			return new MethodDescriptor(descriptor, copyOf(typeCodes, count), copyOf(arrayDimensions, count), copyOf(startIndices, count), copyOf(endIndices, count), parameterSlots);
+		}
+	}
+}
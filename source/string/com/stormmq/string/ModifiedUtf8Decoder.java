@@ -0,0 +1,315 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import static com.stormmq.string.InvalidUtf8StringException.invalidSequence;
+
+// Decodes Modified UTF-8 (JVMS 4.4.7, DataInput.readUTF), where every 1 to 3 byte sequence is exactly one char; lone and paired surrogates are passed through as encoded
+// Stricter than readUTF: bare NUL bytes, four byte sequences and overlong forms other than C0 80 for NUL are invalid, so a valid value has exactly one encoding
+@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+public final class ModifiedUtf8Decoder
+{
+	public static final int Valid = -1;
+
+	private static final int AsciiBlockSize = 8;
+	private static final int Continuation = 0x80;
+	private static final int ContinuationMask = 0xC0;
+	private static final int ContinuationValueMask = 0x3F;
+
+	private ModifiedUtf8Decoder()
+	{
+	}
+
+	public static int firstInvalidIndex(@NotNull final byte[] value, final int offset, final int length)
+	{
+		final int endIndex = offset + length;
+		int index = offset;
+		while (index < endIndex)
+		{
+			index = endOfAsciiRun(value, index, endIndex);
+			if (index == endIndex)
+			{
+				break;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return index;
+			}
+			index += sequenceLength;
+		}
+		return Valid;
+	}
+
+	// The number of chars that value decodes to, or ~index of the first invalid byte
+	public static int decodedLength(@NotNull final byte[] value, final int offset, final int length)
+	{
+		final int endIndex = offset + length;
+		int index = offset;
+		int decodedLength = 0;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			decodedLength += asciiEndIndex - index;
+			index = asciiEndIndex;
+			if (index == endIndex)
+			{
+				break;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return ~index;
+			}
+			decodedLength++;
+			index += sequenceLength;
+		}
+		return decodedLength;
+	}
+
+	@NotNull
+	public static String decode(@NotNull final byte[] value, final int offset, final int length) throws InvalidUtf8StringException
+	{
+		final char[] decoded = new char[length];
+		final int result = decodeInto(value, offset, length, decoded, 0);
+		if (result < 0)
+		{
+			throw invalidSequence(~result);
+		}
+		return new String(decoded, 0, result);
+	}
+
+	/**
+	 * Returns the number of chars written, or {@code ~index} of the first invalid byte; {@code destination} must have room for {@code length} chars.
+	 */
+	public static int decodeInto(@NotNull final byte[] value, final int offset, final int length, @NotNull final char[] destination, final int destinationOffset)
+	{
+		if (destination.length - destinationOffset < length)
+		{
+			throw new IllegalArgumentException("destination is too small to be certain of holding all decoded chars");
+		}
+
+		final int endIndex = offset + length;
+		int index = offset;
+		int position = destinationOffset;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination[position++] = (char) value[index++];
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return ~index;
+			}
+			destination[position++] = character(value, index, sequenceLength);
+			index += sequenceLength;
+		}
+		return position - destinationOffset;
+	}
+
+	/**
+	 * Returns the number of chars appended, or {@code ~index} of the first invalid byte, in which case nothing is appended.
+	 */
+	public static int decodeInto(@NotNull final byte[] value, final int offset, final int length, @NotNull final StringBuilder destination)
+	{
+		final int originalLength = destination.length();
+		destination.ensureCapacity(originalLength + length);
+
+		final int endIndex = offset + length;
+		int index = offset;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination.append((char) value[index++]);
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				destination.setLength(originalLength);
+				return ~index;
+			}
+			destination.append(character(value, index, sequenceLength));
+			index += sequenceLength;
+		}
+		return destination.length() - originalLength;
+	}
+
+	/**
+	 * As {@link #decodeInto(byte[], int, int, StringBuilder)}, but consuming {@code value} from its position to its limit; on failure, the position is left at the first invalid byte, whose absolute index is returned as {@code ~index}.
+	 */
+	public static int decodeInto(@NotNull final ByteBuffer value, @NotNull final StringBuilder destination)
+	{
+		if (value.hasArray())
+		{
+			final int arrayOffset = value.arrayOffset();
+			final int result = decodeInto(value.array(), arrayOffset + value.position(), value.remaining(), destination);
+			if (result < 0)
+			{
+				final int index = ~result - arrayOffset;
+				value.position(index);
+				return ~index;
+			}
+			value.position(value.limit());
+			return result;
+		}
+
+		final int originalLength = destination.length();
+		destination.ensureCapacity(originalLength + value.remaining());
+
+		final int endIndex = value.limit();
+		int index = value.position();
+		while (index < endIndex)
+		{
+			final int lead = value.get(index);
+			if (lead > 0)
+			{
+				destination.append((char) lead);
+				index++;
+				continue;
+			}
+
+			final int sequenceLength = sequenceLength(lead & 0xFF, endIndex - index, index + 1 < endIndex ? value.get(index + 1) : 0, index + 2 < endIndex ? value.get(index + 2) : 0);
+			if (sequenceLength == 0)
+			{
+				destination.setLength(originalLength);
+				value.position(index);
+				return ~index;
+			}
+			destination.append(character(lead, sequenceLength == 1 ? 0 : value.get(index + 1), sequenceLength == 3 ? value.get(index + 2) : 0, sequenceLength));
+			index += sequenceLength;
+		}
+		value.position(endIndex);
+		return destination.length() - originalLength;
+	}
+
+	// For each byte, b | (b - 1) is negative for NUL and for any byte with its high bit set, so one sign test classifies a whole block of eight
+	static int endOfAsciiRun(@NotNull final byte[] value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - AsciiBlockSize;
+		while (index <= lastBlockIndex)
+		{
+			int block = 0;
+			for (int blockIndex = index; blockIndex < index + AsciiBlockSize; blockIndex++)
+			{
+				final int unit = value[blockIndex];
+				block |= unit | (unit - 1);
+			}
+			if (block < 0)
+			{
+				break;
+			}
+			index += AsciiBlockSize;
+		}
+
+		while (index < toIndex && value[index] > 0)
+		{
+			index++;
+		}
+		return index;
+	}
+
+	// Returns zero for NUL, overlong forms other than C0 80, four byte leads, stray continuation bytes and truncated sequences
+	static int sequenceLength(@NotNull final byte[] value, final int index, final int endIndex)
+	{
+		final int remaining = endIndex - index;
+		return sequenceLength(value[index] & 0xFF, remaining, remaining > 1 ? value[index + 1] : 0, remaining > 2 ? value[index + 2] : 0);
+	}
+
+	private static int sequenceLength(final int lead, final int remaining, final byte second, final byte third)
+	{
+		if (lead == 0)
+		{
+			return 0;
+		}
+		if (lead < 0x80)
+		{
+			return 1;
+		}
+		if (lead < 0xC0)
+		{
+			return 0;
+		}
+		if (lead < 0xE0)
+		{
+			if (remaining < 2 || !isContinuation(second))
+			{
+				return 0;
+			}
+			// C0 80 is NUL; C1 and the rest of C0 are overlong
+			return lead >= 0xC2 || (lead == 0xC0 && second == (byte) 0x80) ? 2 : 0;
+		}
+		if (lead < 0xF0)
+		{
+			// E0 is overlong unless the second byte is at least A0
+			return remaining >= 3 && isContinuation(second) && isContinuation(third) && (lead != 0xE0 || (second & 0xFF) >= 0xA0) ? 3 : 0;
+		}
+		return 0;
+	}
+
+	static char character(@NotNull final byte[] value, final int index, final int sequenceLength)
+	{
+		return character(value[index], sequenceLength == 1 ? 0 : value[index + 1], sequenceLength == 3 ? value[index + 2] : 0, sequenceLength);
+	}
+
+	private static char character(final int lead, final int second, final int third, final int sequenceLength)
+	{
+		switch (sequenceLength)
+		{
+			case 1:
+				return (char) lead;
+
+			case 2:
+				return (char) (((lead & 0x1F) << 6) | (second & ContinuationValueMask));
+
+			case 3:
+				return (char) (((lead & 0x0F) << 12) | ((second & ContinuationValueMask) << 6) | (third & ContinuationValueMask));
+
+			default:
+				throw new IllegalArgumentException(StringConstants.Should_be_impossible);
+		}
+	}
+
+	private static boolean isContinuation(final int value)
+	{
+		return (value & ContinuationMask) == Continuation;
+	}
+}
@@ -0,0 +1,243 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.Utf8ByteUser.MaximumLengthPrefixedModifiedUtf8Length;
+import static com.stormmq.string.Utf8Encoder.copyAscii;
+import static java.lang.Math.min;
+
+// Modified UTF-8 (JVMS 4.4.7, DataOutput.writeUTF): NUL is encoded as C0 80 and every char, including each half of a surrogate pair, is encoded on its own in 1 to 3 bytes
+// As surrogates are never paired up, lone surrogates are legitimate and no input can be invalid
+@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+final class ModifiedUtf8Encoder
+{
+	private static final int OneByteLimit = 0x80;
+	private static final int TwoByteLimit = 0x800;
+	private static final int AsciiBlockSize = 8;
+	private static final int NotAsciiOrNulMask = 0xFFFF_FF80;
+
+	private ModifiedUtf8Encoder()
+	{
+	}
+
+	@NotNull
+	static byte[] encodeToByteArray(@NotNull final CharSequence value)
+	{
+		final int length = value.length();
+		final byte[] encoded = new byte[length(value, 0, length)];
+		encode(value, 0, length, encoded, 0, encoded.length);
+		return encoded;
+	}
+
+	@NotNull
+	static byte[] encodeToLengthPrefixedByteArray(@NotNull final CharSequence value)
+	{
+		final int length = value.length();
+		final int encodedLength = length(value, 0, length);
+		if (encodedLength > MaximumLengthPrefixedModifiedUtf8Length)
+		{
+			throw new IllegalArgumentException(format("value encodes to '%1$s' bytes of Modified UTF-8, more than the maximum of '%2$s'", encodedLength, MaximumLengthPrefixedModifiedUtf8Length));
+		}
+		final byte[] encoded = new byte[2 + encodedLength];
+		encoded[0] = (byte) (encodedLength >>> 8);
+		encoded[1] = (byte) encodedLength;
+		encode(value, 0, length, encoded, 2, encoded.length);
+		return encoded;
+	}
+
+	// Returns the number of bytes written, or ~index of the first char that did not fit
+	static int encodeInto(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset)
+	{
+		final int result = encode(value, fromIndex, toIndex, destination, offset, destination.length);
+		return result < 0 ? result : result - offset;
+	}
+
+	// Returns the position after the last byte written, or ~index of the first char that did not fit; only whole chars are written
+	static int encode(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset, final int limit)
+	{
+		int index = fromIndex;
+		int position = offset;
+		while (index < toIndex)
+		{
+			final int asciiEndIndex = min(endOfAsciiRun(value, index, toIndex), index + limit - position);
+			if (asciiEndIndex != index)
+			{
+				copyAscii(value, index, asciiEndIndex, destination, position);
+				position += asciiEndIndex - index;
+				index = asciiEndIndex;
+				if (index == toIndex)
+				{
+					break;
+				}
+			}
+
+			final char character = value.charAt(index);
+			if (character != 0 && character < OneByteLimit)
+			{
+				return ~index;
+			}
+
+			if (character < TwoByteLimit)
+			{
+				if (limit - position < 2)
+				{
+					return ~index;
+				}
+				destination[position++] = (byte) (0xC0 | (character >>> 6));
+				destination[position++] = (byte) (0x80 | (character & 0x3F));
+			}
+			else
+			{
+				if (limit - position < 3)
+				{
+					return ~index;
+				}
+				destination[position++] = (byte) (0xE0 | (character >>> 12));
+				destination[position++] = (byte) (0x80 | ((character >>> 6) & 0x3F));
+				destination[position++] = (byte) (0x80 | (character & 0x3F));
+			}
+			index++;
+		}
+		return position;
+	}
+
+	// Returns the number of bytes written or ~index of the first char that did not fit; destination's position is always advanced past the bytes written
+	static int encode(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final ByteBuffer destination)
+	{
+		final int startPosition = destination.position();
+		if (destination.hasArray())
+		{
+			final int arrayOffset = destination.arrayOffset();
+			final int result = encode(value, fromIndex, toIndex, destination.array(), arrayOffset + startPosition, arrayOffset + destination.limit());
+			if (result < 0)
+			{
+				final int index = ~result;
+				destination.position(startPosition + length(value, fromIndex, index));
+				return result;
+			}
+			destination.position(result - arrayOffset);
+			return result - arrayOffset - startPosition;
+		}
+
+		int index = fromIndex;
+		int position = startPosition;
+		final int limit = destination.limit();
+		try
+		{
+			while (index < toIndex)
+			{
+				final int asciiEndIndex = min(endOfAsciiRun(value, index, toIndex), index + limit - position);
+				while (index < asciiEndIndex)
+				{
+					destination.put(position++, (byte) value.charAt(index++));
+				}
+				if (index == toIndex)
+				{
+					break;
+				}
+
+				final char character = value.charAt(index);
+				if (character != 0 && character < OneByteLimit)
+				{
+					return ~index;
+				}
+
+				if (character < TwoByteLimit)
+				{
+					if (limit - position < 2)
+					{
+						return ~index;
+					}
+					destination.put(position++, (byte) (0xC0 | (character >>> 6)));
+					destination.put(position++, (byte) (0x80 | (character & 0x3F)));
+				}
+				else
+				{
+					if (limit - position < 3)
+					{
+						return ~index;
+					}
+					destination.put(position++, (byte) (0xE0 | (character >>> 12)));
+					destination.put(position++, (byte) (0x80 | ((character >>> 6) & 0x3F)));
+					destination.put(position++, (byte) (0x80 | (character & 0x3F)));
+				}
+				index++;
+			}
+			return position - startPosition;
+		}
+		finally
+		{
+			destination.position(position);
+		}
+	}
+
+	// For each char, c | (c - 1) is negative for NUL and at least 0x80 for non-ASCII, so one mask test classifies a whole block of eight
+	static int endOfAsciiRun(@NotNull final CharSequence value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - AsciiBlockSize;
+		while (index <= lastBlockIndex)
+		{
+			int block = 0;
+			for (int blockIndex = index; blockIndex < index + AsciiBlockSize; blockIndex++)
+			{
+				final int character = value.charAt(blockIndex);
+				block |= character | (character - 1);
+			}
+			if ((block & NotAsciiOrNulMask) != 0)
+			{
+				break;
+			}
+			index += AsciiBlockSize;
+		}
+
+		while (index < toIndex && isAsciiButNotNul(value.charAt(index)))
+		{
+			index++;
+		}
+		return index;
+	}
+
+	private static boolean isAsciiButNotNul(final char character)
+	{
+		return character != 0 && character < OneByteLimit;
+	}
+
+	static int length(@NotNull final CharSequence value, final int fromIndex, final int toIndex)
+	{
+		int index = endOfAsciiRun(value, fromIndex, toIndex);
+		int length = index - fromIndex;
+		while (index < toIndex)
+		{
+			final char character = value.charAt(index);
+			// 1, 2 or 3 bytes as for UTF-8, save that NUL, which (0 - 1) >>> 31 detects, takes 2
+			length += 1 + ((OneByteLimit - 1 - character) >>> 31) + ((TwoByteLimit - 1 - character) >>> 31) + ((character - 1) >>> 31);
+			index++;
+		}
+		return length;
+	}
+}
@@ -24,9 +24,21 @@ package com.stormmq.string;
 
 import org.jetbrains.annotations.*;
 
+import java.io.IOException;
+
+import static com.stormmq.string.HexadecimalCase.LowerCase;
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.max;
+
+// The append and write methods put any minus sign before the zero padding (as '%0Nd' does), count it towards the padding and never truncate digits
 public final class Padding
 {
 	private static final char ZeroDigit = '0';
+	private static final char MinusSign = '-';
+	private static final int MaximumNumberOfLongDecimalDigits = 19;
+	private static final long UnsignedIntMask = 0xFFFF_FFFFL;
+	private static final long HexadecimalDigitMask = 0x0FL;
+	@NotNull private static final char[] LowerCaseHexadecimalDigits = LowerCase.digits;
 
 	private Padding()
 	{
@@ -64,6 +76,201 @@ public final class Padding
 		return pad(unpadded, padding);
 	}
 
+	public static void appendPaddedDecimal(@NotNull final StringBuilder stringBuilder, final int ordinal, final int padding)
+	{
+		appendPaddedDecimal(stringBuilder, (long) ordinal, padding);
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static void appendPaddedDecimal(@NotNull final StringBuilder stringBuilder, final long ordinal, final int padding)
+	{
+		final int numberOfDigits = numberOfDecimalDigits(ordinal);
+		final int start = stringBuilder.length();
+		final int endIndex = start + max(padding, numberOfDigits + sign(ordinal));
+		stringBuilder.setLength(endIndex);
+
+		// Digits are produced least significant first; negative arithmetic avoids overflowing on Long.MIN_VALUE
+		long remaining = negative(ordinal);
+		int index = endIndex;
+		do
+		{
+			final long quotient = remaining / 10L;
+			stringBuilder.setCharAt(--index, (char) (ZeroDigit + (quotient * 10L - remaining)));
+			remaining = quotient;
+		}
+		while (remaining != 0L);
+		final int zeroDigitsStart = ordinal < 0L ? start + 1 : start;
+		while (index > zeroDigitsStart)
+		{
+			stringBuilder.setCharAt(--index, ZeroDigit);
+		}
+		if (ordinal < 0L)
+		{
+			stringBuilder.setCharAt(start, MinusSign);
+		}
+	}
+
+	public static void appendPaddedDecimal(@NotNull final Appendable appendable, final int ordinal, final int padding) throws IOException
+	{
+		appendPaddedDecimal(appendable, (long) ordinal, padding);
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static void appendPaddedDecimal(@NotNull final Appendable appendable, final long ordinal, final int padding) throws IOException
+	{
+		// An Appendable can only be written forwards, so digits are produced most significant first
+		final int numberOfDigits = numberOfDecimalDigits(ordinal);
+		if (ordinal < 0L)
+		{
+			appendable.append(MinusSign);
+		}
+		for (int zeroDigits = padding - numberOfDigits - sign(ordinal); zeroDigits > 0; zeroDigits--)
+		{
+			appendable.append(ZeroDigit);
+		}
+		long remaining = negative(ordinal);
+		long powerOfTen = 1L;
+		for (int digit = 1; digit < numberOfDigits; digit++)
+		{
+			powerOfTen *= 10L;
+		}
+		while (powerOfTen != 0L)
+		{
+			final long quotient = remaining / powerOfTen;
+			appendable.append((char) (ZeroDigit - quotient));
+			remaining -= quotient * powerOfTen;
+			powerOfTen /= 10L;
+		}
+	}
+
+	// Writes ASCII; returns offset after the last byte written
+	public static int writePaddedDecimal(@NotNull final byte[] destination, final int offset, final int ordinal, final int padding)
+	{
+		return writePaddedDecimal(destination, offset, (long) ordinal, padding);
+	}
+
+	// Writes ASCII; returns offset after the last byte written
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static int writePaddedDecimal(@NotNull final byte[] destination, final int offset, final long ordinal, final int padding)
+	{
+		final int numberOfDigits = numberOfDecimalDigits(ordinal);
+		final int endIndex = offset + max(padding, numberOfDigits + sign(ordinal));
+
+		long remaining = negative(ordinal);
+		int index = endIndex;
+		do
+		{
+			final long quotient = remaining / 10L;
+			destination[--index] = (byte) (ZeroDigit + (quotient * 10L - remaining));
+			remaining = quotient;
+		}
+		while (remaining != 0L);
+		final int zeroDigitsStart = ordinal < 0L ? offset + 1 : offset;
+		while (index > zeroDigitsStart)
+		{
+			destination[--index] = ZeroDigit;
+		}
+		if (ordinal < 0L)
+		{
+			destination[offset] = MinusSign;
+		}
+		return endIndex;
+	}
+
+	public static void appendPaddedHexadecimal(@NotNull final StringBuilder stringBuilder, final int ordinal, final int padding)
+	{
+		appendPaddedHexadecimal(stringBuilder, ordinal & UnsignedIntMask, padding);
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static void appendPaddedHexadecimal(@NotNull final StringBuilder stringBuilder, final long ordinal, final int padding)
+	{
+		final int numberOfDigits = numberOfHexadecimalDigits(ordinal);
+		final int start = stringBuilder.length();
+		final int endIndex = start + max(padding, numberOfDigits);
+		stringBuilder.setLength(endIndex);
+
+		long remaining = ordinal;
+		int index = endIndex;
+		while (index > start)
+		{
+			stringBuilder.setCharAt(--index, LowerCaseHexadecimalDigits[(int) (remaining & HexadecimalDigitMask)]);
+			remaining >>>= 4;
+		}
+	}
+
+	public static void appendPaddedHexadecimal(@NotNull final Appendable appendable, final int ordinal, final int padding) throws IOException
+	{
+		appendPaddedHexadecimal(appendable, ordinal & UnsignedIntMask, padding);
+	}
+
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static void appendPaddedHexadecimal(@NotNull final Appendable appendable, final long ordinal, final int padding) throws IOException
+	{
+		final int numberOfDigits = numberOfHexadecimalDigits(ordinal);
+		for (int zeroDigits = padding - numberOfDigits; zeroDigits > 0; zeroDigits--)
+		{
+			appendable.append(ZeroDigit);
+		}
+		for (int shift = (numberOfDigits - 1) << 2; shift >= 0; shift -= 4)
+		{
+			appendable.append(LowerCaseHexadecimalDigits[(int) ((ordinal >>> shift) & HexadecimalDigitMask)]);
+		}
+	}
+
+	// Writes ASCII; returns offset after the last byte written
+	public static int writePaddedHexadecimal(@NotNull final byte[] destination, final int offset, final int ordinal, final int padding)
+	{
+		return writePaddedHexadecimal(destination, offset, ordinal & UnsignedIntMask, padding);
+	}
+
+	// Writes ASCII; returns offset after the last byte written
+	@SuppressWarnings("NumericCastThatLosesPrecision")
+	public static int writePaddedHexadecimal(@NotNull final byte[] destination, final int offset, final long ordinal, final int padding)
+	{
+		final int endIndex = offset + max(padding, numberOfHexadecimalDigits(ordinal));
+
+		// Zero padding falls out of shifting the value to zero
+		long remaining = ordinal;
+		int index = endIndex;
+		while (index > offset)
+		{
+			destination[--index] = (byte) LowerCaseHexadecimalDigits[(int) (remaining & HexadecimalDigitMask)];
+			remaining >>>= 4;
+		}
+		return endIndex;
+	}
+
+	private static int numberOfDecimalDigits(final long ordinal)
+	{
+		final long negative = negative(ordinal);
+		long negativePowerOfTen = -10L;
+		for (int numberOfDigits = 1; numberOfDigits < MaximumNumberOfLongDecimalDigits; numberOfDigits++)
+		{
+			if (negative > negativePowerOfTen)
+			{
+				return numberOfDigits;
+			}
+			negativePowerOfTen *= 10L;
+		}
+		return MaximumNumberOfLongDecimalDigits;
+	}
+
+	private static int numberOfHexadecimalDigits(final long unsignedValue)
+	{
+		return max(1, (Long.SIZE - numberOfLeadingZeros(unsignedValue) + 3) >>> 2);
+	}
+
+	private static long negative(final long ordinal)
+	{
+		return ordinal < 0L ? ordinal : -ordinal;
+	}
+
+	private static int sign(final long ordinal)
+	{
+		return ordinal < 0L ? 1 : 0;
+	}
+
 	@NotNull
 	public static String pad(@NotNull @NonNls final String unpadded, final int padding)
 	{
@@ -0,0 +1,227 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.stormmq.string.Utf8Decoder.firstInvalidIndex;
+import static java.lang.Character.isHighSurrogate;
+import static java.lang.Math.max;
+
+public final class ParallelUtf8
+{
+	private static final int MinimumChunkLength = 256 * 1024;
+	private static final int ChunksPerThread = 4;
+	private static final int MaximumUtf8ContinuationBytes = 3;
+
+	private ParallelUtf8()
+	{
+	}
+
+	@NotNull
+	public static byte[] encodeToUtf8ByteArray(@NotNull final CharSequence value, @NotNull final ForkJoinPool forkJoinPool) throws InvalidUtf16StringException
+	{
+		final int[] boundaries = utf16ChunkBoundaries(value, forkJoinPool);
+		final int numberOfChunks = boundaries.length - 1;
+		if (numberOfChunks == 1)
+		{
+			return Utf8ByteUser.encodeToUtf8ByteArray(value);
+		}
+
+		final int[] lengths = inParallel(forkJoinPool, numberOfChunks, chunk -> Utf8Encoder.length(value, boundaries[chunk], boundaries[chunk + 1]));
+
+		final int[] offsets = new int[numberOfChunks + 1];
+		for (int chunk = 0; chunk < numberOfChunks; chunk++)
+		{
+			offsets[chunk + 1] = offsets[chunk] + lengths[chunk];
+		}
+
+		final byte[] encoded = new byte[offsets[numberOfChunks]];
+		inParallel(forkJoinPool, numberOfChunks, chunk -> Utf8Encoder.encode(value, boundaries[chunk], boundaries[chunk + 1], encoded, offsets[chunk], offsets[chunk + 1]));
+		return encoded;
+	}
+
+	public static int firstInvalidUtf8Index(@NotNull final byte[] value, final int offset, final int length, @NotNull final ForkJoinPool forkJoinPool)
+	{
+		final int[] boundaries = utf8ChunkBoundaries(value, offset, length, forkJoinPool);
+		final int numberOfChunks = boundaries.length - 1;
+		if (numberOfChunks == 1)
+		{
+			return firstInvalidIndex(value, offset, length);
+		}
+
+		final int[] invalidIndices = inParallel(forkJoinPool, numberOfChunks, chunk -> firstInvalidIndex(value, boundaries[chunk], boundaries[chunk + 1] - boundaries[chunk]));
+
+		for (final int invalidIndex : invalidIndices)
+		{
+			if (invalidIndex != Utf8Decoder.Valid)
+			{
+				return invalidIndex;
+			}
+		}
+		return Utf8Decoder.Valid;
+	}
+
+	// Failures are collected per chunk so that the one reported is the first a sequential pass would have found; X is RuntimeException for a chunkUser that can not fail
+	@SuppressWarnings("unchecked")
+	@NotNull
+	private static <X extends Exception> int[] inParallel(@NotNull final ForkJoinPool forkJoinPool, final int numberOfChunks, @NotNull final ChunkUser<X> chunkUser) throws X
+	{
+		final int[] results = new int[numberOfChunks];
+		final Exception[] failures = new Exception[numberOfChunks];
+		forkJoinPool.invoke(new ChunkAction<>(chunkUser, results, failures, 0, numberOfChunks));
+		for (final Exception failure : failures)
+		{
+			if (failure != null)
+			{
+				// Only ever an X, or a RuntimeException, as those are all useChunk() can throw
+				throw (X) failure;
+			}
+		}
+		return results;
+	}
+
+	// A chunk never ends with a high surrogate unless it is the last; it takes the following char, so that a valid pair stays whole and an invalid one fails exactly as it would sequentially
+	@NotNull
+	private static int[] utf16ChunkBoundaries(@NotNull final CharSequence value, @NotNull final ForkJoinPool forkJoinPool)
+	{
+		final int length = value.length();
+		final int chunkLength = chunkLength(length, forkJoinPool);
+		final int[] boundaries = new int[length / chunkLength + 2];
+		int numberOfChunks = 0;
+		int boundary = 0;
+		while (boundary < length)
+		{
+			boundary += chunkLength;
+			if (boundary >= length)
+			{
+				boundary = length;
+			}
+			else if (isHighSurrogate(value.charAt(boundary - 1)))
+			{
+				boundary++;
+			}
+			boundaries[++numberOfChunks] = boundary;
+		}
+		return trim(boundaries, max(numberOfChunks, 1));
+	}
+
+	// A chunk never starts on a continuation byte, unless preceded by more continuation bytes than any valid sequence has; either way every chunk starts where a sequential scan would
+	@NotNull
+	private static int[] utf8ChunkBoundaries(@NotNull final byte[] value, final int offset, final int length, @NotNull final ForkJoinPool forkJoinPool)
+	{
+		final int endIndex = offset + length;
+		final int chunkLength = chunkLength(length, forkJoinPool);
+		final int[] boundaries = new int[length / chunkLength + 2];
+		boundaries[0] = offset;
+		int numberOfChunks = 0;
+		int boundary = offset;
+		while (boundary < endIndex)
+		{
+			boundary += chunkLength;
+			if (boundary >= endIndex)
+			{
+				boundary = endIndex;
+			}
+			else
+			{
+				int moves = 0;
+				while (moves < MaximumUtf8ContinuationBytes && boundary < endIndex && isContinuation(value[boundary]))
+				{
+					boundary++;
+					moves++;
+				}
+			}
+			boundaries[++numberOfChunks] = boundary;
+		}
+		return trim(boundaries, max(numberOfChunks, 1));
+	}
+
+	private static int chunkLength(final int length, @NotNull final ForkJoinPool forkJoinPool)
+	{
+		return max(MinimumChunkLength, length / (forkJoinPool.getParallelism() * ChunksPerThread));
+	}
+
+	@SuppressWarnings("MagicNumber")
+	private static boolean isContinuation(final byte value)
+	{
+		return (value & 0xC0) == 0x80;
+	}
+
+	@NotNull
+	private static int[] trim(@NotNull final int[] boundaries, final int numberOfChunks)
+	{
+		final int[] trimmed = new int[numberOfChunks + 1];
+		System.arraycopy(boundaries, 0, trimmed, 0, numberOfChunks + 1);
+		return trimmed;
+	}
+
+	@FunctionalInterface
+	private interface ChunkUser<X extends Exception>
+	{
+		int useChunk(final int chunk) throws X;
+	}
+
+	private static final class ChunkAction<X extends Exception> extends RecursiveAction
+	{
+		private static final long serialVersionUID = 0L;
+
+		@NotNull private final ChunkUser<X> chunkUser;
+		@NotNull private final int[] results;
+		@NotNull private final Exception[] failures;
+		private final int fromChunk;
+		private final int toChunk;
+
+		private ChunkAction(@NotNull final ChunkUser<X> chunkUser, @NotNull final int[] results, @NotNull final Exception[] failures, final int fromChunk, final int toChunk)
+		{
+			this.chunkUser = chunkUser;
+			this.results = results;
+			this.failures = failures;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (toChunk - fromChunk == 1)
+			{
+				try
+				{
+					results[fromChunk] = chunkUser.useChunk(fromChunk);
+				}
+				catch (final Exception e)
+				{
+					failures[fromChunk] = e;
+				}
+				return;
+			}
+
+			final int middleChunk = (fromChunk + toChunk) >>> 1;
+			invokeAll(new ChunkAction<>(chunkUser, results, failures, fromChunk, middleChunk), new ChunkAction<>(chunkUser, results, failures, middleChunk, toChunk));
+		}
+	}
+}
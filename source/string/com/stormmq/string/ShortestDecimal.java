@@ -0,0 +1,323 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+
+import static java.math.BigInteger.ONE;
+import static java.math.BigInteger.TEN;
+
+// Shortest decimal significands that round-trip, after Giulietti's Schubfach ('The Schubfach way to render doubles', 2020)
+// Results are packed as the significand shifted left by TagShift, with a tag from which the decimal exponent is recovered; the significand may have trailing zeros
+// Callers must exclude zero, infinities and NaN
+@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+final class ShortestDecimal
+{
+	private static final int DoublePrecision = 53;
+	private static final int DoubleMinimumExponent = -1074;
+	private static final long DoubleMinimumSignificand = 1L << DoublePrecision - 1;
+	private static final long DoubleTrailingSignificandMask = DoubleMinimumSignificand - 1L;
+	private static final int DoubleBiasedExponentMask = 0x7FF;
+	private static final long DoubleTinySignificand = 3L;
+
+	private static final int FloatPrecision = 24;
+	private static final int FloatMinimumExponent = -149;
+	private static final int FloatMinimumSignificand = 1 << FloatPrecision - 1;
+	private static final int FloatTrailingSignificandMask = FloatMinimumSignificand - 1;
+	private static final int FloatBiasedExponentMask = 0xFF;
+	private static final int FloatTinySignificand = 8;
+
+	static final int TagShift = 2;
+	private static final int TagMask = 0x03;
+	private static final int IntegerTag = 0;
+	private static final int KTag = 1;
+	private static final int KPlusDkTag = 2;
+
+	private static final long Mask63 = Long.MAX_VALUE;
+	private static final long Mask32 = 0xFFFF_FFFFL;
+
+	// g = floor(β) + 1 for 10^-k = β 2^r with 2^125 <= β < 2^126, split into its upper and lower 63 bits
+	private static final int MinimumK = -324;
+	private static final int MaximumK = 292;
+	@NotNull private static final long[] G = g();
+
+	@NotNull
+	private static long[] g()
+	{
+		final long[] g = new long[(MaximumK - MinimumK + 1) << 1];
+		BigInteger powerOfTen = ONE;
+		for (int k = 0; k >= MinimumK; k--)
+		{
+			final int shift = powerOfTen.bitLength() - 126;
+			store(g, k, shift >= 0 ? powerOfTen.shiftRight(shift) : powerOfTen.shiftLeft(-shift));
+			powerOfTen = powerOfTen.multiply(TEN);
+		}
+		powerOfTen = TEN;
+		for (int k = 1; k <= MaximumK; k++)
+		{
+			store(g, k, ONE.shiftLeft(125 + powerOfTen.bitLength()).divide(powerOfTen));
+			powerOfTen = powerOfTen.multiply(TEN);
+		}
+		return g;
+	}
+
+	private static void store(@NotNull final long[] g, final int k, @NotNull final BigInteger floor)
+	{
+		final BigInteger value = floor.add(ONE);
+		final int index = (k - MinimumK) << 1;
+		g[index] = value.shiftRight(63).longValue();
+		g[index + 1] = value.longValue() & Mask63;
+	}
+
+	private ShortestDecimal()
+	{
+	}
+
+	static long decimal(final double value)
+	{
+		final long bits = Double.doubleToRawLongBits(value);
+		final long trailingSignificand = bits & DoubleTrailingSignificandMask;
+		final int biasedExponent = (int) (bits >>> DoublePrecision - 1) & DoubleBiasedExponentMask;
+		if (biasedExponent == 0)
+		{
+			return trailingSignificand < DoubleTinySignificand ? decimal(DoubleMinimumExponent, 10L * trailingSignificand) : decimal(DoubleMinimumExponent, trailingSignificand);
+		}
+
+		final int q = DoubleMinimumExponent - 1 + biasedExponent;
+		final long c = DoubleMinimumSignificand | trailingSignificand;
+		if (-DoublePrecision < q && q < 0)
+		{
+			final long integer = c >> -q;
+			if (integer << -q == c)
+			{
+				return integer << TagShift | IntegerTag;
+			}
+		}
+		return decimal(q, c);
+	}
+
+	static int decimalExponent(final double value, final long decimal)
+	{
+		final int tag = (int) decimal & TagMask;
+		if (tag == IntegerTag)
+		{
+			return 0;
+		}
+		final long bits = Double.doubleToRawLongBits(value);
+		final long trailingSignificand = bits & DoubleTrailingSignificandMask;
+		final int biasedExponent = (int) (bits >>> DoublePrecision - 1) & DoubleBiasedExponentMask;
+		if (biasedExponent == 0)
+		{
+			final int k = flog10pow2(DoubleMinimumExponent);
+			return tag == KPlusDkTag && trailingSignificand < DoubleTinySignificand ? k - 1 : k;
+		}
+		final int q = DoubleMinimumExponent - 1 + biasedExponent;
+		return k(trailingSignificand == 0L && q != DoubleMinimumExponent, q);
+	}
+
+	private static long decimal(final int q, final long c)
+	{
+		final int out = (int) c & 1;
+		final long cb = c << 2;
+		final long cbr = cb + 2L;
+		final boolean isIrregular = c == DoubleMinimumSignificand && q != DoubleMinimumExponent;
+		final long cbl = isIrregular ? cb - 1L : cb - 2L;
+		final int k = k(isIrregular, q);
+		final int h = q + flog2pow10(-k) + 2;
+
+		final int index = (k - MinimumK) << 1;
+		final long g1 = G[index];
+		final long g0 = G[index + 1];
+		final long vb = roundToOdd(g1, g0, cb << h);
+		final long vbl = roundToOdd(g1, g0, cbl << h);
+		final long vbr = roundToOdd(g1, g0, cbr << h);
+
+		final long s = vb >> 2;
+		if (s >= 100L)
+		{
+			final long sp10 = 10L * (s / 10L);
+			final long tp10 = sp10 + 10L;
+			final boolean upin = vbl + out <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin)
+			{
+				return (upin ? sp10 : tp10) << TagShift | KTag;
+			}
+		}
+
+		final long t = s + 1L;
+		final boolean uin = vbl + out <= s << 2;
+		final boolean win = (t << 2) + out <= vbr;
+		final long significand;
+		if (uin != win)
+		{
+			significand = uin ? s : t;
+		}
+		else
+		{
+			final long cmp = vb - (s + t << 1);
+			significand = cmp < 0L || cmp == 0L && (s & 1L) == 0L ? s : t;
+		}
+		return significand << TagShift | KPlusDkTag;
+	}
+
+	static long decimal(final float value)
+	{
+		final int bits = Float.floatToRawIntBits(value);
+		final int trailingSignificand = bits & FloatTrailingSignificandMask;
+		final int biasedExponent = (bits >>> FloatPrecision - 1) & FloatBiasedExponentMask;
+		if (biasedExponent == 0)
+		{
+			return trailingSignificand < FloatTinySignificand ? decimal(FloatMinimumExponent, 10 * trailingSignificand) : decimal(FloatMinimumExponent, trailingSignificand);
+		}
+
+		final int q = FloatMinimumExponent - 1 + biasedExponent;
+		final int c = FloatMinimumSignificand | trailingSignificand;
+		if (-FloatPrecision < q && q < 0)
+		{
+			final int integer = c >> -q;
+			if (integer << -q == c)
+			{
+				return (long) integer << TagShift | IntegerTag;
+			}
+		}
+		return decimal(q, c);
+	}
+
+	static int decimalExponent(final float value, final long decimal)
+	{
+		final int tag = (int) decimal & TagMask;
+		if (tag == IntegerTag)
+		{
+			return 0;
+		}
+		final int bits = Float.floatToRawIntBits(value);
+		final int trailingSignificand = bits & FloatTrailingSignificandMask;
+		final int biasedExponent = (bits >>> FloatPrecision - 1) & FloatBiasedExponentMask;
+		if (biasedExponent == 0)
+		{
+			final int k = flog10pow2(FloatMinimumExponent);
+			return tag == KPlusDkTag && trailingSignificand < FloatTinySignificand ? k - 1 : k;
+		}
+		final int q = FloatMinimumExponent - 1 + biasedExponent;
+		return k(trailingSignificand == 0 && q != FloatMinimumExponent, q);
+	}
+
+	private static long decimal(final int q, final int c)
+	{
+		final int out = c & 1;
+		final long cb = (long) c << 2;
+		final long cbr = cb + 2L;
+		final boolean isIrregular = c == FloatMinimumSignificand && q != FloatMinimumExponent;
+		final long cbl = isIrregular ? cb - 1L : cb - 2L;
+		final int k = k(isIrregular, q);
+		final int h = q + flog2pow10(-k) + 33;
+
+		final long g = G[(k - MinimumK) << 1] + 1L;
+		final int vb = roundToOdd(g, cb << h);
+		final int vbl = roundToOdd(g, cbl << h);
+		final int vbr = roundToOdd(g, cbr << h);
+
+		final int s = vb >> 2;
+		if (s >= 100)
+		{
+			final int sp10 = 10 * (s / 10);
+			final int tp10 = sp10 + 10;
+			final boolean upin = vbl + out <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin)
+			{
+				return (long) (upin ? sp10 : tp10) << TagShift | KTag;
+			}
+		}
+
+		final int t = s + 1;
+		final boolean uin = vbl + out <= s << 2;
+		final boolean win = (t << 2) + out <= vbr;
+		final int significand;
+		if (uin != win)
+		{
+			significand = uin ? s : t;
+		}
+		else
+		{
+			final int cmp = vb - (s + t << 1);
+			significand = cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t;
+		}
+		return (long) significand << TagShift | KPlusDkTag;
+	}
+
+	// An irregular spacing occurs at the smallest significand of each binade, where the gap below is half that above
+	private static int k(final boolean isIrregular, final int q)
+	{
+		return isIrregular ? flog10threeQuartersPow2(q) : flog10pow2(q);
+	}
+
+	private static long roundToOdd(final long g1, final long g0, final long cp)
+	{
+		final long x1 = multiplyHigh(g0, cp);
+		final long y0 = g1 * cp;
+		final long y1 = multiplyHigh(g1, cp);
+		final long z = (y0 >>> 1) + x1;
+		final long vbp = y1 + (z >>> 63);
+		return vbp | (z & Mask63) + Mask63 >>> 63;
+	}
+
+	private static int roundToOdd(final long g, final long cp)
+	{
+		final long x1 = multiplyHigh(g, cp);
+		final long vbp = x1 >>> 31;
+		return (int) (vbp | (x1 & Mask32) + Mask32 >>> 32);
+	}
+
+	// Math.multiplyHigh() is not available before Java 9
+	private static long multiplyHigh(final long x, final long y)
+	{
+		final long x1 = x >> 32;
+		final long x2 = x & Mask32;
+		final long y1 = y >> 32;
+		final long y2 = y & Mask32;
+		final long z2 = x2 * y2;
+		final long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & Mask32;
+		final long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+	private static int flog10pow2(final int e)
+	{
+		return (int) (e * 661_971_961_083L >> 41);
+	}
+
+	private static int flog10threeQuartersPow2(final int e)
+	{
+		return (int) (e * 661_971_961_083L - 274_743_187_321L >> 41);
+	}
+
+	private static int flog2pow10(final int e)
+	{
+		return (int) (e * 913_124_641_741L >> 38);
+	}
+}
@@ -0,0 +1,98 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+// Receives the structure of generic signatures (JVMS 4.7.9.1); every event other than those of DescriptorUser is optional
+// Type arguments, bounds and inner class types follow the useClassType() of the class type they belong to and precede its endOfClassType()
+public interface SignatureUser<X extends Exception> extends DescriptorUser<X>
+{
+	char UnboundedWildcard = '*';
+	char ExtendsWildcard = '+';
+	char SuperWildcard = '-';
+
+	default void useTypeParameter(final int startIndex, final int endIndex) throws X
+	{
+	}
+
+	// Followed by the class bound's type, if any
+	default void useClassBound() throws X
+	{
+	}
+
+	// Followed by the interface bound's type
+	default void useInterfaceBound() throws X
+	{
+	}
+
+	default void endOfTypeParameters() throws X
+	{
+	}
+
+	default void startOfTypeArguments() throws X
+	{
+	}
+
+	// wildcard is one of UnboundedWildcard, ExtendsWildcard or SuperWildcard; the latter two are followed by the bound's type
+	default void useWildcard(final char wildcard) throws X
+	{
+	}
+
+	default void endOfTypeArguments() throws X
+	{
+	}
+
+	// The simple name of an inner class, eg 'Entry' in 'Ljava/util/Map<TK;TV;>.Entry;'
+	default void useInnerClassType(final int startIndex, final int endIndex) throws X
+	{
+	}
+
+	default void useTypeVariable(final int arrayDimensions, final int startIndex, final int endIndex) throws X
+	{
+	}
+
+	// Precedes each class type of a class signature after its superclass
+	default void useSuperinterface() throws X
+	{
+	}
+
+	// Precedes each thrown type of a method signature
+	default void useThrows() throws X
+	{
+	}
+
+	default int parseFieldSignature(@NotNull final CharSequence value) throws X
+	{
+		return DescriptorParser.fieldSignature(value, this);
+	}
+
+	default int parseClassSignature(@NotNull final CharSequence value) throws X
+	{
+		return DescriptorParser.classSignature(value, this);
+	}
+
+	default int parseMethodSignature(@NotNull final CharSequence value) throws X
+	{
+		return DescriptorParser.methodSignature(value, this);
+	}
+}
@@ -25,6 +25,8 @@ package com.stormmq.string;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
+import static com.stormmq.string.Utf8ByteUser.encodeToModifiedUtf8ByteArray;
+
 public final class StringConstants
 {
 	@NotNull @NonNls public static final String Should_not_be_possible = "Should not be possible";
@@ -57,10 +59,15 @@ public final class StringConstants
 	@NotNull @NonNls public static final String StaticInitializerMethodName = "<clinit>";
 	@NotNull @NonNls public static final String InstanceInitializerMethodName = "<init>";
 
+	// Pre-encoded for class file constant pools; must not be modified
+	@SuppressWarnings("PublicStaticArrayField") @NotNull public static final byte[] StaticInitializerMethodNameModifiedUtf8 = encodeToModifiedUtf8ByteArray(StaticInitializerMethodName);
+	@SuppressWarnings("PublicStaticArrayField") @NotNull public static final byte[] InstanceInitializerMethodNameModifiedUtf8 = encodeToModifiedUtf8ByteArray(InstanceInitializerMethodName);
+	@SuppressWarnings("PublicStaticArrayField") @NotNull public static final byte[] DefaultAnnotationMemberNameModifiedUtf8 = encodeToModifiedUtf8ByteArray(DefaultAnnotationMemberName);
+
 	@SuppressWarnings("HardcodedFileSeparator") public static final char InternalTypeNameSeparator = '/';
 	@NotNull @NonNls public static final String InternalTypeNameSeparatorString = String.valueOf(InternalTypeNameSeparator);
 	public static final char ExternalTypeNameSeparator = '.';
-	@NotNull @NonNls public static final String ExternalTypeNameSeparatorString = String.valueOf(InternalTypeNameSeparator);
+	@NotNull @NonNls public static final String ExternalTypeNameSeparatorString = String.valueOf(ExternalTypeNameSeparator);
 	public static final char EndOfTypeDescriptorCharacter = ';';
 	public static final char ArrayTypeCodeCharacter = '[';
 	public static final char StartOfMethodDescriptorParameters = '(';
@@ -26,8 +26,15 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 
+import static com.stormmq.string.Formatting.format;
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Long.numberOfTrailingZeros;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
 public final class StringUtilities
 {
 	@NonNls
@@ -64,6 +71,225 @@ public final class StringUtilities
 		} while (index != -1);
 	}
 
+	// Unlike split(String, char, Consumer), tokens are reported as indices into toSplit rather than copied
+	public static <X extends Exception> void splitIntoTokens(@NotNull final CharSequence toSplit, final char characterToSplitOn, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		final int length = toSplit.length();
+		int fromIndex = 0;
+		if (toSplit instanceof String)
+		{
+			final String string = (String) toSplit;
+			int index;
+			while ((index = string.indexOf(characterToSplitOn, fromIndex)) != -1)
+			{
+				tokenUser.useToken(fromIndex, index);
+				fromIndex = index + 1;
+			}
+		}
+		else
+		{
+			for (int index = 0; index < length; index++)
+			{
+				if (toSplit.charAt(index) == characterToSplitOn)
+				{
+					tokenUser.useToken(fromIndex, index);
+					fromIndex = index + 1;
+				}
+			}
+		}
+		tokenUser.useToken(fromIndex, length);
+	}
+
+	public static <X extends Exception> void splitIntoTokens(@NotNull final CharSequence toSplit, @NotNull @NonNls final CharSequence delimiter, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		final int delimiterLength = delimiter.length();
+		if (delimiterLength == 0)
+		{
+			throw new IllegalArgumentException("delimiter can not be empty");
+		}
+		if (delimiterLength == 1)
+		{
+			splitIntoTokens(toSplit, delimiter.charAt(0), tokenUser);
+			return;
+		}
+
+		final int length = toSplit.length();
+		int fromIndex = 0;
+		if (toSplit instanceof String)
+		{
+			final String string = (String) toSplit;
+			final String delimiterString = delimiter.toString();
+			int index;
+			while ((index = string.indexOf(delimiterString, fromIndex)) != -1)
+			{
+				tokenUser.useToken(fromIndex, index);
+				fromIndex = index + delimiterLength;
+			}
+		}
+		else
+		{
+			final char firstCharacter = delimiter.charAt(0);
+			final int lastIndex = length - delimiterLength;
+			int index = 0;
+			while (index <= lastIndex)
+			{
+				if (toSplit.charAt(index) == firstCharacter && regionMatches(toSplit, index, delimiter, delimiterLength))
+				{
+					tokenUser.useToken(fromIndex, index);
+					index += delimiterLength;
+					fromIndex = index;
+				}
+				else
+				{
+					index++;
+				}
+			}
+		}
+		tokenUser.useToken(fromIndex, length);
+	}
+
+	private static boolean regionMatches(@NotNull final CharSequence toSplit, final int fromIndex, @NotNull final CharSequence delimiter, final int delimiterLength)
+	{
+		for (int index = 1; index < delimiterLength; index++)
+		{
+			if (toSplit.charAt(fromIndex + index) != delimiter.charAt(index))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Splits on any of charactersToSplitOn; ASCII ones are looked up in a bit mask, others by a linear search
+	@SuppressWarnings("MagicNumber")
+	public static <X extends Exception> void splitIntoTokens(@NotNull final CharSequence toSplit, @NotNull final char[] charactersToSplitOn, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		long lowAsciiMask = 0L;
+		long highAsciiMask = 0L;
+		for (final char character : charactersToSplitOn)
+		{
+			if (character < 64)
+			{
+				lowAsciiMask |= 1L << character;
+			}
+			else if (character < 128)
+			{
+				highAsciiMask |= 1L << character;
+			}
+		}
+
+		final int length = toSplit.length();
+		int fromIndex = 0;
+		for (int index = 0; index < length; index++)
+		{
+			final char character = toSplit.charAt(index);
+			final boolean isDelimiter;
+			if (character < 64)
+			{
+				isDelimiter = (lowAsciiMask & 1L << character) != 0L;
+			}
+			else if (character < 128)
+			{
+				isDelimiter = (highAsciiMask & 1L << character) != 0L;
+			}
+			else
+			{
+				isDelimiter = contains(charactersToSplitOn, character);
+			}
+			if (isDelimiter)
+			{
+				tokenUser.useToken(fromIndex, index);
+				fromIndex = index + 1;
+			}
+		}
+		tokenUser.useToken(fromIndex, length);
+	}
+
+	private static boolean contains(@NotNull final char[] characters, final char character)
+	{
+		for (final char candidate : characters)
+		{
+			if (candidate == character)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// The view passed to user is reused for every token, so it must be copied with toString() if it is to be retained
+	public static void splitIntoViews(@NotNull final CharSequence toSplit, final char characterToSplitOn, @NotNull final Consumer<? super CharSequence> user)
+	{
+		final CharSequenceWindow window = new CharSequenceWindow(toSplit);
+		splitIntoTokens(toSplit, characterToSplitOn, (startIndex, endIndex) -> user.accept(window.moveTo(startIndex, endIndex)));
+	}
+
+	// The view passed to user is reused for every token, so it must be copied with toString() if it is to be retained
+	public static void splitIntoViews(@NotNull final CharSequence toSplit, @NotNull @NonNls final CharSequence delimiter, @NotNull final Consumer<? super CharSequence> user)
+	{
+		final CharSequenceWindow window = new CharSequenceWindow(toSplit);
+		splitIntoTokens(toSplit, delimiter, (startIndex, endIndex) -> user.accept(window.moveTo(startIndex, endIndex)));
+	}
+
+	// asciiByteToSplitOn must be ASCII, as only then can it never occur within a multi-byte UTF-8 sequence; indices are into toSplit
+	public static <X extends Exception> void splitIntoTokens(@NotNull final byte[] toSplit, final int offset, final int length, final byte asciiByteToSplitOn, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		splitIntoTokens(wrap(toSplit).order(LITTLE_ENDIAN), offset, offset + length, asciiByteToSplitOn, tokenUser);
+	}
+
+	// Indices are absolute; neither position nor limit is changed
+	public static <X extends Exception> void splitIntoTokens(@NotNull final ByteBuffer toSplit, final byte asciiByteToSplitOn, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		splitIntoTokens(toSplit, toSplit.position(), toSplit.limit(), asciiByteToSplitOn, tokenUser);
+	}
+
+	// Eight bytes at a time: a byte of the exclusive-or with the broadcast delimiter is zero only where the delimiter is
+	@SuppressWarnings("MagicNumber")
+	private static <X extends Exception> void splitIntoTokens(@NotNull final ByteBuffer toSplit, final int fromIndex, final int toIndex, final byte asciiByteToSplitOn, @NotNull final TokenUser<X> tokenUser) throws X
+	{
+		if (asciiByteToSplitOn < 0)
+		{
+			throw new IllegalArgumentException(format("asciiByteToSplitOn '%1$s' is not ASCII", asciiByteToSplitOn));
+		}
+		final long broadcast = (asciiByteToSplitOn & 0xFFL) * 0x01_01_01_01_01_01_01_01L;
+		final boolean isLittleEndian = toSplit.order() == LITTLE_ENDIAN;
+
+		int tokenStart = fromIndex;
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - Long.BYTES;
+		while (index <= lastBlockIndex)
+		{
+			final long matches = zeroBytes(toSplit.getLong(index) ^ broadcast);
+			if (matches == 0L)
+			{
+				index += Long.BYTES;
+				continue;
+			}
+			final int delimiterIndex = index + ((isLittleEndian ? numberOfTrailingZeros(matches) : numberOfLeadingZeros(matches)) >>> 3);
+			tokenUser.useToken(tokenStart, delimiterIndex);
+			tokenStart = delimiterIndex + 1;
+			index = tokenStart;
+		}
+		while (index < toIndex)
+		{
+			if (toSplit.get(index) == asciiByteToSplitOn)
+			{
+				tokenUser.useToken(tokenStart, index);
+				tokenStart = index + 1;
+			}
+			index++;
+		}
+		tokenUser.useToken(tokenStart, toIndex);
+	}
+
+	// Sets the top bit of exactly those bytes which are zero; unlike the cheaper (x - 0x01..) & ~x & 0x80.. no borrow can flag a byte above a zero one, so big-endian reads work too
+	@SuppressWarnings("MagicNumber")
+	static long zeroBytes(final long value)
+	{
+		final long sevenBits = 0x7F_7F_7F_7F_7F_7F_7F_7FL;
+		return ~(((value & sevenBits) + sevenBits) | value | sevenBits);
+	}
+
 	@NotNull
 	public static IOException enumSerializationIsNotSupportedForConstantsInASecureContext()
 	{
@@ -0,0 +1,267 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.StringConstants.ExternalTypeNameSeparator;
+import static com.stormmq.string.StringConstants.InternalTypeNameSeparator;
+import static com.stormmq.string.StringUtilities.zeroBytes;
+import static com.stormmq.string.Utf8ByteUser.encodeToModifiedUtf8ByteArray;
+import static java.nio.ByteBuffer.wrap;
+
+// A type name in both internal ('java/lang/String') and external ('java.lang.String') forms, along with the internal form's Modified UTF-8 encoding for class file constant pools
+// Hot names are cached by internalTypeName() and externalTypeName(); the static conversions work on slices and UTF-8 bytes without creating Strings
+public final class TypeName
+{
+	private static final int MaximumCacheSize = 4096;
+	@NotNull private static final ConcurrentHashMap<String, TypeName> InternalCache = new ConcurrentHashMap<>(64);
+	@NotNull private static final ConcurrentHashMap<String, TypeName> ExternalCache = new ConcurrentHashMap<>(64);
+
+	@NotNull
+	public static TypeName internalTypeName(@NotNull @NonNls final String internalTypeName)
+	{
+		@Nullable final TypeName cached = InternalCache.get(internalTypeName);
+		if (cached != null)
+		{
+			return cached;
+		}
+		guardDoesNotContain(internalTypeName, ExternalTypeNameSeparator);
+		return cache(new TypeName(internalTypeName, internalTypeName.replace(InternalTypeNameSeparator, ExternalTypeNameSeparator)));
+	}
+
+	@NotNull
+	public static TypeName externalTypeName(@NotNull @NonNls final String externalTypeName)
+	{
+		@Nullable final TypeName cached = ExternalCache.get(externalTypeName);
+		if (cached != null)
+		{
+			return cached;
+		}
+		guardDoesNotContain(externalTypeName, InternalTypeNameSeparator);
+		return cache(new TypeName(externalTypeName.replace(ExternalTypeNameSeparator, InternalTypeNameSeparator), externalTypeName));
+	}
+
+	@NotNull
+	private static TypeName cache(@NotNull final TypeName typeName)
+	{
+		if (InternalCache.size() >= MaximumCacheSize)
+		{
+			InternalCache.clear();
+			ExternalCache.clear();
+		}
+		InternalCache.put(typeName.internalTypeName, typeName);
+		ExternalCache.put(typeName.externalTypeName, typeName);
+		return typeName;
+	}
+
+	private static void guardDoesNotContain(@NotNull @NonNls final String typeName, final char separator)
+	{
+		final int index = typeName.indexOf(separator);
+		if (index != -1)
+		{
+			throw new IllegalArgumentException(format("typeName '%1$s' contains the wrong separator at index '%2$s'", typeName, index));
+		}
+	}
+
+	@NotNull
+	public static String internalToExternal(@NotNull @NonNls final CharSequence internalTypeName)
+	{
+		return replace(internalTypeName, InternalTypeNameSeparator, ExternalTypeNameSeparator);
+	}
+
+	@NotNull
+	public static String externalToInternal(@NotNull @NonNls final CharSequence externalTypeName)
+	{
+		return replace(externalTypeName, ExternalTypeNameSeparator, InternalTypeNameSeparator);
+	}
+
+	// Returns the offset after the last char written
+	public static int internalToExternal(@NotNull @NonNls final CharSequence internalTypeName, final int fromIndex, final int toIndex, @NotNull final char[] destination, final int offset)
+	{
+		return replace(internalTypeName, fromIndex, toIndex, destination, offset, InternalTypeNameSeparator, ExternalTypeNameSeparator);
+	}
+
+	// Returns the offset after the last char written
+	public static int externalToInternal(@NotNull @NonNls final CharSequence externalTypeName, final int fromIndex, final int toIndex, @NotNull final char[] destination, final int offset)
+	{
+		return replace(externalTypeName, fromIndex, toIndex, destination, offset, ExternalTypeNameSeparator, InternalTypeNameSeparator);
+	}
+
+	public static void internalToExternal(@NotNull @NonNls final CharSequence internalTypeName, final int fromIndex, final int toIndex, @NotNull final StringBuilder destination)
+	{
+		replace(internalTypeName, fromIndex, toIndex, destination, InternalTypeNameSeparator, ExternalTypeNameSeparator);
+	}
+
+	public static void externalToInternal(@NotNull @NonNls final CharSequence externalTypeName, final int fromIndex, final int toIndex, @NotNull final StringBuilder destination)
+	{
+		replace(externalTypeName, fromIndex, toIndex, destination, ExternalTypeNameSeparator, InternalTypeNameSeparator);
+	}
+
+	// Both separators are ASCII, so can never occur within a multi-byte sequence; destination may be utf8 itself at the same offset, for conversion in place
+	public static void internalToExternal(@NotNull final byte[] utf8, final int offset, final int length, @NotNull final byte[] destination, final int destinationOffset)
+	{
+		replace(utf8, offset, length, destination, destinationOffset, (byte) InternalTypeNameSeparator, (byte) ExternalTypeNameSeparator);
+	}
+
+	// Both separators are ASCII, so can never occur within a multi-byte sequence; destination may be utf8 itself at the same offset, for conversion in place
+	public static void externalToInternal(@NotNull final byte[] utf8, final int offset, final int length, @NotNull final byte[] destination, final int destinationOffset)
+	{
+		replace(utf8, offset, length, destination, destinationOffset, (byte) ExternalTypeNameSeparator, (byte) InternalTypeNameSeparator);
+	}
+
+	@NotNull
+	private static String replace(@NotNull final CharSequence value, final char separator, final char replacement)
+	{
+		if (value instanceof String)
+		{
+			return ((String) value).replace(separator, replacement);
+		}
+		final int length = value.length();
+		final char[] replaced = new char[length];
+		replace(value, 0, length, replaced, 0, separator, replacement);
+		return new String(replaced);
+	}
+
+	private static int replace(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final char[] destination, final int offset, final char separator, final char replacement)
+	{
+		int position = offset;
+		for (int index = fromIndex; index < toIndex; index++)
+		{
+			final char character = value.charAt(index);
+			destination[position++] = character == separator ? replacement : character;
+		}
+		return position;
+	}
+
+	private static void replace(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final StringBuilder destination, final char separator, final char replacement)
+	{
+		destination.ensureCapacity(destination.length() + toIndex - fromIndex);
+		for (int index = fromIndex; index < toIndex; index++)
+		{
+			final char character = value.charAt(index);
+			destination.append(character == separator ? replacement : character);
+		}
+	}
+
+	// Eight bytes at a time: the top bit of each matching byte is moved down and multiplied by the difference between the separators, which is then exclusive-ored in
+	@SuppressWarnings("MagicNumber")
+	private static void replace(@NotNull final byte[] value, final int offset, final int length, @NotNull final byte[] destination, final int destinationOffset, final byte separator, final byte replacement)
+	{
+		final ByteBuffer source = wrap(value);
+		final ByteBuffer target = value == destination ? source : wrap(destination);
+		final long broadcast = (separator & 0xFFL) * 0x01_01_01_01_01_01_01_01L;
+		final long difference = (separator ^ replacement) & 0xFFL;
+
+		final int delta = destinationOffset - offset;
+		final int endIndex = offset + length;
+		int index = offset;
+		final int lastBlockIndex = endIndex - Long.BYTES;
+		while (index <= lastBlockIndex)
+		{
+			final long block = source.getLong(index);
+			target.putLong(index + delta, block ^ ((zeroBytes(block ^ broadcast) >>> 7) * difference));
+			index += Long.BYTES;
+		}
+		while (index < endIndex)
+		{
+			final byte unit = value[index];
+			destination[index + delta] = unit == separator ? replacement : unit;
+			index++;
+		}
+	}
+
+	@NotNull @NonNls private final String internalTypeName;
+	@NotNull @NonNls private final String externalTypeName;
+	@NotNull private final byte[] internalTypeNameModifiedUtf8;
+
+	private TypeName(@NotNull @NonNls final String internalTypeName, @NotNull @NonNls final String externalTypeName)
+	{
+		this.internalTypeName = internalTypeName;
+		this.externalTypeName = externalTypeName;
+		internalTypeNameModifiedUtf8 = encodeToModifiedUtf8ByteArray(internalTypeName);
+	}
+
+	@NotNull
+	public String internalTypeName()
+	{
+		return internalTypeName;
+	}
+
+	@NotNull
+	public String externalTypeName()
+	{
+		return externalTypeName;
+	}
+
+	public int internalTypeNameModifiedUtf8Length()
+	{
+		return internalTypeNameModifiedUtf8.length;
+	}
+
+	// byteArrayUser must not retain or modify the bytes
+	public <X extends Exception> void useInternalTypeNameModifiedUtf8(@NotNull final ByteArrayUser<X> byteArrayUser) throws X
+	{
+		byteArrayUser.useBytes(internalTypeNameModifiedUtf8, 0, internalTypeNameModifiedUtf8.length);
+	}
+
+	// Returns the offset after the last byte written
+	public int writeInternalTypeNameModifiedUtf8(@NotNull final byte[] destination, final int offset)
+	{
+		final int length = internalTypeNameModifiedUtf8.length;
+		System.arraycopy(internalTypeNameModifiedUtf8, 0, destination, offset, length);
+		return offset + length;
+	}
+
+	@Override
+	public boolean equals(@Nullable final Object o)
+	{
+		if (this == o)
+		{
+			return true;
+		}
+		if (o == null || getClass() != o.getClass())
+		{
+			return false;
+		}
+
+		final TypeName that = (TypeName) o;
+		return internalTypeName.equals(that.internalTypeName);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return internalTypeName.hashCode();
+	}
+
+	@Override
+	@NotNull
+	public String toString()
+	{
+		return externalTypeName;
+	}
+}
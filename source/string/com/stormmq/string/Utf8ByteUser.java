@@ -22,18 +22,27 @@
 
 package com.stormmq.string;
 
-import org.jetbrains.annotations.NonNls;
-import org.jetbrains.annotations.NotNull;
+import com.stormmq.string.Instrumentation.CountingMalformedInputUser;
+import org.jetbrains.annotations.*;
 
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import static com.stormmq.string.Formatting.format;
-import static java.lang.System.arraycopy;
-import static java.nio.ByteBuffer.allocate;
+import static com.stormmq.string.Instrumentation.Enabled;
+import static com.stormmq.string.Instrumentation.begin;
+import static com.stormmq.string.Instrumentation.countingMalformedInputUser;
+import static com.stormmq.string.Instrumentation.end;
+import static com.stormmq.string.Instrumentation.instrument;
+import static com.stormmq.string.InstrumentedOperation.ModifiedUtf8Encoding;
+import static com.stormmq.string.InstrumentedOperation.Utf8Encoding;
+import static com.stormmq.string.MalformedInputPolicy.*;
 
 @FunctionalInterface
 public interface Utf8ByteUser<X extends Exception>
 {
+	int MaximumLengthPrefixedModifiedUtf8Length = 65_535;
+
 	static int maximumUtf16ToUtf8EncodingSize(@NotNull final CharSequence fullyQualifiedTypeName)
 	{
 		return fullyQualifiedTypeName.length() * 3;
@@ -55,35 +64,128 @@ public interface Utf8ByteUser<X extends Exception>
 	@NotNull
 	static byte[] encodeToUtf8ByteArray(@NonNls @NotNull final CharSequence value) throws InvalidUtf16StringException
 	{
-		final ByteBuffer byteBuffer = allocate(maximumUtf16ToUtf8EncodingSize(value));
-		final Utf8ByteUser<RuntimeException> utf8ByteUser = (byteIndex, sequenceLength, utf8Byte) ->
+		return Enabled ? instrument(Utf8Encoding, value.length(), () -> Utf8Encoder.encodeToByteArray(value), encoded -> encoded.length) : Utf8Encoder.encodeToByteArray(value);
+	}
+
+	// Exactly sized and flipped, ready for writing; allocating direct memory is slow, so prefer a DirectUtf8Arena when encoding many values
+	@NotNull
+	static ByteBuffer encodeToDirectByteBuffer(@NonNls @NotNull final CharSequence value) throws InvalidUtf16StringException
+	{
+		return Enabled ? instrument(Utf8Encoding, value.length(), () -> Utf8Encoder.encodeToDirectByteBuffer(value), ByteBuffer::limit) : Utf8Encoder.encodeToDirectByteBuffer(value);
+	}
+
+	// With Report, as encodeToUtf8ByteArray(CharSequence); otherwise lone surrogates are reported to malformedInputUser and then skipped or replaced by U+FFFD
+	@NotNull
+	static <X extends Exception> byte[] encodeToUtf8ByteArray(@NonNls @NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final MalformedInputUser<X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		return encodeToUtf8ByteArray(value, malformedInputPolicy, Utf8Encoder.ReplacementCodePointUtf8, malformedInputUser);
+	}
+
+	// As encodeToUtf8ByteArray(CharSequence, MalformedInputPolicy, MalformedInputUser), but Replace uses the bytes of replacement, as they are, for each lone surrogate
+	@NotNull
+	static <X extends Exception> byte[] encodeToUtf8ByteArray(@NonNls @NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final byte[] replacement, @NotNull final MalformedInputUser<X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		if (malformedInputPolicy == Report)
 		{
-			//noinspection NumericCastThatLosesPrecision
-			byteBuffer.put((byte) utf8Byte);
-		};
-		utf8ByteUser.encodeUtf8Bytes(value);
-		final byte[] underlying = byteBuffer.array();
-		final int length = byteBuffer.position();
-		final byte[] slice = new byte[length];
-		arraycopy(underlying, 0, slice, 0, length);
-		return slice;
+			return encodeToUtf8ByteArray(value);
+		}
+		@Nullable final Object event = Enabled ? begin() : null;
+		final MalformedInputUser<X> countedMalformedInputUser = Enabled ? countingMalformedInputUser(malformedInputUser) : malformedInputUser;
+		@Nullable final byte[] replacementOrSkip = malformedInputPolicy == Replace ? replacement : null;
+		final int length = value.length();
+		final byte[] encoded = new byte[Utf8Encoder.lenientLength(value, 0, length, replacementOrSkip == null ? 0 : replacementOrSkip.length)];
+		Utf8Encoder.encodeLeniently(value, 0, length, encoded, 0, replacementOrSkip, countedMalformedInputUser);
+		if (Enabled)
+		{
+			end(event, Utf8Encoding, length, encoded.length, ((CountingMalformedInputUser<X>) countedMalformedInputUser).count);
+		}
+		return encoded;
 	}
 
-	static int utf8Length(@NotNull @NonNls final CharSequence value) throws InvalidUtf16StringException
+	/**
+	 * Returns the number of bytes written, or, if {@code destination} is too small, {@code ~index} where {@code index} is that of the first char not encoded; only whole code points are ever written.
+	 */
+	static int encodeInto(@NonNls @NotNull final CharSequence value, @NotNull final byte[] destination, final int offset) throws InvalidUtf16StringException
 	{
-		class Counter implements Utf8ByteUser<RuntimeException>
+		return encodeInto(value, 0, value.length(), destination, offset);
+	}
+
+	static int encodeInto(@NonNls @NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset) throws InvalidUtf16StringException
+	{
+		return Enabled ? instrument(Utf8Encoding, toIndex - fromIndex, () -> Utf8Encoder.encodeInto(value, fromIndex, toIndex, destination, offset), written -> written < 0 ? 0 : written) : Utf8Encoder.encodeInto(value, fromIndex, toIndex, destination, offset);
+	}
+
+	/**
+	 * As {@link #encodeInto(CharSequence, byte[], int)}, but {@code destination}'s position is always advanced past the bytes written, including when the result is {@code ~index}; if {@link InvalidUtf16StringException} is thrown the position is left unchanged, for heap and direct buffers alike.
+	 */
+	static int encodeInto(@NonNls @NotNull final CharSequence value, @NotNull final ByteBuffer destination) throws InvalidUtf16StringException
+	{
+		return encodeInto(value, 0, value.length(), destination);
+	}
+
+	static int encodeInto(@NonNls @NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final ByteBuffer destination) throws InvalidUtf16StringException
+	{
+		if (destination.isReadOnly())
 		{
-			private int count = 0;
+			throw new ReadOnlyBufferException();
+		}
+		final int startPosition = destination.position();
+		return Enabled ? instrument(Utf8Encoding, toIndex - fromIndex, () -> Utf8Encoder.encode(value, fromIndex, toIndex, destination), result -> destination.position() - startPosition) : Utf8Encoder.encode(value, fromIndex, toIndex, destination);
+	}
 
-			@Override
-			public void useUnsignedByte(final int byteIndex, final int sequenceLength, final int utf8Byte)
-			{
-				count++;
-			}
+	static int utf8Length(@NotNull @NonNls final CharSequence value) throws InvalidUtf16StringException
+	{
+		return Utf8Encoder.length(value, 0, value.length());
+	}
+
+	static int utf8Length(@NotNull @NonNls final CharSequence value, final int fromIndex, final int toIndex) throws InvalidUtf16StringException
+	{
+		return Utf8Encoder.length(value, fromIndex, toIndex);
+	}
+
+	// Modified UTF-8, as used by class file constant pools and DataOutput.writeUTF; never fails, as lone surrogates are encoded as they are
+	@NotNull
+	static byte[] encodeToModifiedUtf8ByteArray(@NonNls @NotNull final CharSequence value)
+	{
+		return Enabled ? instrument(ModifiedUtf8Encoding, value.length(), () -> ModifiedUtf8Encoder.encodeToByteArray(value), encoded -> encoded.length) : ModifiedUtf8Encoder.encodeToByteArray(value);
+	}
+
+	// As DataOutput.writeUTF, with a big endian unsigned 16-bit length before the bytes
+	@NotNull
+	static byte[] encodeToLengthPrefixedModifiedUtf8ByteArray(@NonNls @NotNull final CharSequence value)
+	{
+		return Enabled ? instrument(ModifiedUtf8Encoding, value.length(), () -> ModifiedUtf8Encoder.encodeToLengthPrefixedByteArray(value), encoded -> encoded.length) : ModifiedUtf8Encoder.encodeToLengthPrefixedByteArray(value);
+	}
+
+	/**
+	 * As {@link #encodeInto(CharSequence, byte[], int)}, but encoding Modified UTF-8.
+	 */
+	static int encodeModifiedUtf8Into(@NonNls @NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset)
+	{
+		return Enabled ? instrument(ModifiedUtf8Encoding, toIndex - fromIndex, () -> ModifiedUtf8Encoder.encodeInto(value, fromIndex, toIndex, destination, offset), written -> written < 0 ? 0 : written) : ModifiedUtf8Encoder.encodeInto(value, fromIndex, toIndex, destination, offset);
+	}
+
+	/**
+	 * As {@link #encodeInto(CharSequence, ByteBuffer)}, but encoding Modified UTF-8.
+	 */
+	static int encodeModifiedUtf8Into(@NonNls @NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final ByteBuffer destination)
+	{
+		if (destination.isReadOnly())
+		{
+			throw new ReadOnlyBufferException();
 		}
-		@SuppressWarnings("ClassReferencesSubclass") final Counter counter = new Counter();
-		counter.encodeUtf8Bytes(value);
-		return counter.count;
+		final int startPosition = destination.position();
+		return Enabled ? instrument(ModifiedUtf8Encoding, toIndex - fromIndex, () -> ModifiedUtf8Encoder.encode(value, fromIndex, toIndex, destination), result -> destination.position() - startPosition) : ModifiedUtf8Encoder.encode(value, fromIndex, toIndex, destination);
+	}
+
+	static int modifiedUtf8Length(@NotNull @NonNls final CharSequence value)
+	{
+		return ModifiedUtf8Encoder.length(value, 0, value.length());
+	}
+
+	static int modifiedUtf8Length(@NotNull @NonNls final CharSequence value, final int fromIndex, final int toIndex)
+	{
+		return ModifiedUtf8Encoder.length(value, fromIndex, toIndex);
 	}
 
 	void useUnsignedByte(final int byteIndex, final int sequenceLength, final int utf8Byte) throws X;
@@ -93,6 +195,32 @@ public interface Utf8ByteUser<X extends Exception>
 		codePointToUtf8Bytes().iterateOverStringCodePoints(value);
 	}
 
+	// Replace encodes U+FFFD for each lone surrogate
+	default void encodeUtf8Bytes(@NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		codePointToUtf8Bytes().iterateOverStringCodePoints(value, malformedInputPolicy, malformedInputUser);
+	}
+
+	// Replace passes the bytes of replacement, as one sequence, for each lone surrogate
+	default void encodeUtf8Bytes(@NotNull final CharSequence value, @NotNull final MalformedInputPolicy malformedInputPolicy, @NotNull final byte[] replacement, @NotNull final MalformedInputUser<? extends X> malformedInputUser) throws InvalidUtf16StringException, X
+	{
+		if (malformedInputPolicy != Replace)
+		{
+			encodeUtf8Bytes(value, malformedInputPolicy, malformedInputUser);
+			return;
+		}
+
+		final int sequenceLength = replacement.length;
+		codePointToUtf8Bytes().iterateOverStringCodePoints(value, Skip, (index, length) ->
+		{
+			malformedInputUser.useMalformedInput(index, length);
+			for (int byteIndex = 0; byteIndex < sequenceLength; byteIndex++)
+			{
+				useUnsignedByte(byteIndex, sequenceLength, replacement[byteIndex] & 0xFF);
+			}
+		});
+	}
+
 	@SuppressWarnings("MagicNumber")
 	@NotNull
 	default CodePointUser<X> codePointToUtf8Bytes()
@@ -105,14 +233,14 @@ public interface Utf8ByteUser<X extends Exception>
 				return;
 			}
 
-			if (codePoint < 0x07FF)
+			if (codePoint < 0x0800)
 			{
 				useUnsignedByte(0, 2, 192 + (codePoint >>> 6));
 				useUnsignedByte(1, 2, 128 + (codePoint % 64));
 				return;
 			}
 
-			if (codePoint < 0xFFFF)
+			if (codePoint < 0x10000)
 			{
 				useUnsignedByte(0, 3, 224 + (codePoint >>> 12));
 				useUnsignedByte(1, 3, 128 + ((codePoint >> 6) & 0x3F));
@@ -132,4 +260,30 @@ public interface Utf8ByteUser<X extends Exception>
 			throw new IllegalArgumentException(format("Invalid Unicode Code Point '0x%1$08X' greater than 0x1FFFFF at index '%2$s' which should be impossible to exist in this context", codePoint, index));
 		};
 	}
+
+	// Each char is encoded on its own, so, unlike encodeUtf8Bytes(), sequenceLength is at most 3 and surrogates arrive as 3 byte sequences
+	@SuppressWarnings("MagicNumber")
+	default void encodeModifiedUtf8Bytes(@NotNull final CharSequence value) throws X
+	{
+		final int length = value.length();
+		for (int index = 0; index < length; index++)
+		{
+			final char character = value.charAt(index);
+			if (character != 0 && character < 0x80)
+			{
+				useUnsignedByte(0, 1, character);
+			}
+			else if (character < 0x0800)
+			{
+				useUnsignedByte(0, 2, 0xC0 | (character >>> 6));
+				useUnsignedByte(1, 2, 0x80 | (character & 0x3F));
+			}
+			else
+			{
+				useUnsignedByte(0, 3, 0xE0 | (character >>> 12));
+				useUnsignedByte(1, 3, 0x80 | ((character >>> 6) & 0x3F));
+				useUnsignedByte(2, 3, 0x80 | (character & 0x3F));
+			}
+		}
+	}
 }
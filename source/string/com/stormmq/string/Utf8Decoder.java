@@ -0,0 +1,459 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.Character.*;
+
+@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+public final class Utf8Decoder
+{
+	public static final int Valid = -1;
+
+	private static final int AsciiBlockSize = 8;
+	private static final long AsciiBlockHighBits = 0x80_80_80_80_80_80_80_80L;
+	private static final int Continuation = 0x80;
+	private static final int ContinuationMask = 0xC0;
+	private static final int ContinuationValueMask = 0x3F;
+
+	private Utf8Decoder()
+	{
+	}
+
+	/**
+	 * Returns the index of the first invalid byte, or {@link #Valid} if every byte is well formed; unlike {@code decodeInto}, the index is not complemented.
+	 */
+	public static int firstInvalidIndex(@NotNull final byte[] value, final int offset, final int length)
+	{
+		final int endIndex = offset + length;
+		int index = offset;
+		while (index < endIndex)
+		{
+			index = endOfAsciiRun(value, index, endIndex);
+			if (index == endIndex)
+			{
+				break;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return index;
+			}
+			index += sequenceLength;
+		}
+		return Valid;
+	}
+
+	/**
+	 * As {@link #firstInvalidIndex(byte[], int, int)}, checking {@code value} from its position to its limit without moving the position; the index returned is absolute.
+	 */
+	public static int firstInvalidIndex(@NotNull final ByteBuffer value)
+	{
+		if (value.hasArray())
+		{
+			final int arrayOffset = value.arrayOffset();
+			final int result = firstInvalidIndex(value.array(), arrayOffset + value.position(), value.remaining());
+			return result == Valid ? Valid : result - arrayOffset;
+		}
+
+		final int endIndex = value.limit();
+		int index = value.position();
+		while (index < endIndex)
+		{
+			index = endOfAsciiRun(value, index, endIndex);
+			if (index == endIndex)
+			{
+				break;
+			}
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return index;
+			}
+			index += sequenceLength;
+		}
+		return Valid;
+	}
+
+	/**
+	 * Returns the number of chars written, or {@code ~index} of the first invalid byte; {@code destination} must have room for {@code length} chars.
+	 */
+	public static int decodeInto(@NotNull final byte[] value, final int offset, final int length, @NotNull final char[] destination, final int destinationOffset)
+	{
+		if (destination.length - destinationOffset < length)
+		{
+			throw new IllegalArgumentException("destination is too small to be certain of holding all decoded chars");
+		}
+
+		final int endIndex = offset + length;
+		int index = offset;
+		int position = destinationOffset;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination[position++] = (char) value[index++];
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				return ~index;
+			}
+			position = putCodePoint(codePoint(value, index, sequenceLength), destination, position);
+			index += sequenceLength;
+		}
+		return position - destinationOffset;
+	}
+
+	/**
+	 * Returns the number of chars appended, or {@code ~index} of the first invalid byte, in which case nothing is appended.
+	 */
+	public static int decodeInto(@NotNull final byte[] value, final int offset, final int length, @NotNull final StringBuilder destination)
+	{
+		final int originalLength = destination.length();
+		destination.ensureCapacity(originalLength + length);
+
+		final int endIndex = offset + length;
+		int index = offset;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination.append((char) value[index++]);
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				destination.setLength(originalLength);
+				return ~index;
+			}
+			destination.appendCodePoint(codePoint(value, index, sequenceLength));
+			index += sequenceLength;
+		}
+		return destination.length() - originalLength;
+	}
+
+	/**
+	 * As {@link #decodeInto(byte[], int, int, char[], int)}, but consuming {@code value} from its position to its limit; on failure, the position is left at the first invalid byte, whose absolute index is returned as {@code ~index}.
+	 */
+	public static int decodeInto(@NotNull final ByteBuffer value, @NotNull final char[] destination, final int destinationOffset)
+	{
+		if (value.hasArray())
+		{
+			final int arrayOffset = value.arrayOffset();
+			final int result = decodeInto(value.array(), arrayOffset + value.position(), value.remaining(), destination, destinationOffset);
+			return consumed(value, arrayOffset, result);
+		}
+
+		final int length = value.remaining();
+		if (destination.length - destinationOffset < length)
+		{
+			throw new IllegalArgumentException("destination is too small to be certain of holding all decoded chars");
+		}
+
+		final int endIndex = value.limit();
+		int index = value.position();
+		int position = destinationOffset;
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination[position++] = (char) value.get(index++);
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				value.position(index);
+				return ~index;
+			}
+			position = putCodePoint(codePoint(value, index, sequenceLength), destination, position);
+			index += sequenceLength;
+		}
+		value.position(endIndex);
+		return position - destinationOffset;
+	}
+
+	/**
+	 * As {@link #decodeInto(byte[], int, int, StringBuilder)}, but consuming {@code value} from its position to its limit; on failure, the position is left at the first invalid byte, whose absolute index is returned as {@code ~index}.
+	 */
+	public static int decodeInto(@NotNull final ByteBuffer value, @NotNull final StringBuilder destination)
+	{
+		if (value.hasArray())
+		{
+			final int arrayOffset = value.arrayOffset();
+			final int result = decodeInto(value.array(), arrayOffset + value.position(), value.remaining(), destination);
+			return consumed(value, arrayOffset, result);
+		}
+
+		final int originalLength = destination.length();
+		destination.ensureCapacity(originalLength + value.remaining());
+
+		final int endIndex = value.limit();
+		int index = value.position();
+		while (index < endIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, endIndex);
+			while (index < asciiEndIndex)
+			{
+				destination.append((char) value.get(index++));
+			}
+			if (index == endIndex)
+			{
+				break;
+			}
+
+			final int sequenceLength = sequenceLength(value, index, endIndex);
+			if (sequenceLength == 0)
+			{
+				destination.setLength(originalLength);
+				value.position(index);
+				return ~index;
+			}
+			destination.appendCodePoint(codePoint(value, index, sequenceLength));
+			index += sequenceLength;
+		}
+		value.position(endIndex);
+		return destination.length() - originalLength;
+	}
+
+	private static int consumed(@NotNull final ByteBuffer value, final int arrayOffset, final int result)
+	{
+		if (result < 0)
+		{
+			final int index = ~result - arrayOffset;
+			value.position(index);
+			return ~index;
+		}
+		value.position(value.limit());
+		return result;
+	}
+
+	private static int putCodePoint(final int codePoint, @NotNull final char[] destination, final int position)
+	{
+		if (isBmpCodePoint(codePoint))
+		{
+			destination[position] = (char) codePoint;
+			return position + 1;
+		}
+		destination[position] = highSurrogate(codePoint);
+		destination[position + 1] = lowSurrogate(codePoint);
+		return position + 2;
+	}
+
+	// Eight bytes are ORed together so that a single sign test classifies the whole block
+	static int endOfAsciiRun(@NotNull final byte[] value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - AsciiBlockSize;
+		while (index <= lastBlockIndex)
+		{
+			final int block = value[index] | value[index + 1] | value[index + 2] | value[index + 3] | value[index + 4] | value[index + 5] | value[index + 6] | value[index + 7];
+			if (block < 0)
+			{
+				break;
+			}
+			index += AsciiBlockSize;
+		}
+
+		while (index < toIndex && value[index] >= 0)
+		{
+			index++;
+		}
+		return index;
+	}
+
+	static int endOfAsciiRun(@NotNull final ByteBuffer value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - AsciiBlockSize;
+		while (index <= lastBlockIndex)
+		{
+			if ((value.getLong(index) & AsciiBlockHighBits) != 0L)
+			{
+				break;
+			}
+			index += AsciiBlockSize;
+		}
+
+		while (index < toIndex && value.get(index) >= 0)
+		{
+			index++;
+		}
+		return index;
+	}
+
+	// Returns zero for overlong forms, surrogates, code points above U+10FFFF, stray continuation bytes and truncated sequences
+	static int sequenceLength(@NotNull final byte[] value, final int index, final int endIndex)
+	{
+		final int lead = value[index] & 0xFF;
+		if (lead < 0x80)
+		{
+			return 1;
+		}
+		if (lead < 0xC2)
+		{
+			return 0;
+		}
+		final int remaining = endIndex - index;
+		if (lead < 0xE0)
+		{
+			return remaining >= 2 && isContinuation(value[index + 1]) ? 2 : 0;
+		}
+		if (lead < 0xF0)
+		{
+			return remaining >= 3 && isValidSecondByteOfThree(lead, value[index + 1]) && isContinuation(value[index + 2]) ? 3 : 0;
+		}
+		if (lead < 0xF5)
+		{
+			return remaining >= 4 && isValidSecondByteOfFour(lead, value[index + 1]) && isContinuation(value[index + 2]) && isContinuation(value[index + 3]) ? 4 : 0;
+		}
+		return 0;
+	}
+
+	static int sequenceLength(@NotNull final ByteBuffer value, final int index, final int endIndex)
+	{
+		final int lead = value.get(index) & 0xFF;
+		if (lead < 0x80)
+		{
+			return 1;
+		}
+		if (lead < 0xC2)
+		{
+			return 0;
+		}
+		final int remaining = endIndex - index;
+		if (lead < 0xE0)
+		{
+			return remaining >= 2 && isContinuation(value.get(index + 1)) ? 2 : 0;
+		}
+		if (lead < 0xF0)
+		{
+			return remaining >= 3 && isValidSecondByteOfThree(lead, value.get(index + 1)) && isContinuation(value.get(index + 2)) ? 3 : 0;
+		}
+		if (lead < 0xF5)
+		{
+			return remaining >= 4 && isValidSecondByteOfFour(lead, value.get(index + 1)) && isContinuation(value.get(index + 2)) && isContinuation(value.get(index + 3)) ? 4 : 0;
+		}
+		return 0;
+	}
+
+	static int codePoint(@NotNull final byte[] value, final int index, final int sequenceLength)
+	{
+		switch (sequenceLength)
+		{
+			case 1:
+				return value[index];
+
+			case 2:
+				return ((value[index] & 0x1F) << 6) | (value[index + 1] & ContinuationValueMask);
+
+			case 3:
+				return ((value[index] & 0x0F) << 12) | ((value[index + 1] & ContinuationValueMask) << 6) | (value[index + 2] & ContinuationValueMask);
+
+			case 4:
+				return ((value[index] & 0x07) << 18) | ((value[index + 1] & ContinuationValueMask) << 12) | ((value[index + 2] & ContinuationValueMask) << 6) | (value[index + 3] & ContinuationValueMask);
+
+			default:
+				throw new IllegalArgumentException(StringConstants.Should_be_impossible);
+		}
+	}
+
+	static int codePoint(@NotNull final ByteBuffer value, final int index, final int sequenceLength)
+	{
+		switch (sequenceLength)
+		{
+			case 1:
+				return value.get(index);
+
+			case 2:
+				return ((value.get(index) & 0x1F) << 6) | (value.get(index + 1) & ContinuationValueMask);
+
+			case 3:
+				return ((value.get(index) & 0x0F) << 12) | ((value.get(index + 1) & ContinuationValueMask) << 6) | (value.get(index + 2) & ContinuationValueMask);
+
+			case 4:
+				return ((value.get(index) & 0x07) << 18) | ((value.get(index + 1) & ContinuationValueMask) << 12) | ((value.get(index + 2) & ContinuationValueMask) << 6) | (value.get(index + 3) & ContinuationValueMask);
+
+			default:
+				throw new IllegalArgumentException(StringConstants.Should_be_impossible);
+		}
+	}
+
+	private static boolean isContinuation(final byte value)
+	{
+		return (value & ContinuationMask) == Continuation;
+	}
+
+	private static boolean isValidSecondByteOfThree(final int lead, final byte second)
+	{
+		final int unsigned = second & 0xFF;
+		switch (lead)
+		{
+			case 0xE0:
+				return unsigned >= 0xA0 && unsigned <= 0xBF;
+
+			case 0xED:
+				return unsigned >= 0x80 && unsigned <= 0x9F;
+
+			default:
+				return unsigned >= 0x80 && unsigned <= 0xBF;
+		}
+	}
+
+	private static boolean isValidSecondByteOfFour(final int lead, final byte second)
+	{
+		final int unsigned = second & 0xFF;
+		switch (lead)
+		{
+			case 0xF0:
+				return unsigned >= 0x90 && unsigned <= 0xBF;
+
+			case 0xF4:
+				return unsigned >= 0x80 && unsigned <= 0x8F;
+
+			default:
+				return unsigned >= 0x80 && unsigned <= 0xBF;
+		}
+	}
+}
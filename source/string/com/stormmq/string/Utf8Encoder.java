@@ -0,0 +1,476 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+import static com.stormmq.string.InvalidUtf16StringException.*;
+import static java.lang.Character.*;
+import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+final class Utf8Encoder
+{
+	private static final int OneByteLimit = 0x80;
+	private static final int TwoByteLimit = 0x800;
+	private static final int AsciiBlockSize = 8;
+	static final int Malformed = -1;
+
+	// U+FFFD; package-private so that it can not be mutated
+	@NotNull static final byte[] ReplacementCodePointUtf8 = {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD};
+
+	private Utf8Encoder()
+	{
+	}
+
+	@NotNull
+	static byte[] encodeToByteArray(@NotNull final CharSequence value) throws InvalidUtf16StringException
+	{
+		final int length = value.length();
+		final byte[] encoded = new byte[length(value, 0, length)];
+		encode(value, 0, length, encoded, 0, encoded.length);
+		return encoded;
+	}
+
+	@NotNull
+	static ByteBuffer encodeToDirectByteBuffer(@NotNull final CharSequence value) throws InvalidUtf16StringException
+	{
+		final int length = value.length();
+		final ByteBuffer encoded = allocateDirect(length(value, 0, length));
+		encode(value, 0, length, encoded);
+		encoded.flip();
+		return encoded;
+	}
+
+	// Returns the number of bytes written, or ~index of the first char not encoded
+	static int encodeInto(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset) throws InvalidUtf16StringException
+	{
+		final int result = encode(value, fromIndex, toIndex, destination, offset, destination.length);
+		return result < 0 ? result : result - offset;
+	}
+
+	static int encode(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset, final int limit) throws InvalidUtf16StringException
+	{
+		final long encoded = encodeAsMuchAsFits(value, fromIndex, toIndex, destination, offset, limit);
+		final int index = encodedIndex(encoded);
+		return index == toIndex ? encodedPosition(encoded) : ~index;
+	}
+
+	static int encodedIndex(final long encoded)
+	{
+		return (int) (encoded >>> 32);
+	}
+
+	static int encodedPosition(final long encoded)
+	{
+		return (int) encoded;
+	}
+
+	private static long encoded(final int index, final int position)
+	{
+		return ((long) index << 32) | (position & 0xFFFF_FFFFL);
+	}
+
+	// Returns the index of the first char not encoded and the position after the last byte written, packed by encoded(); only whole code points are written
+	static long encodeAsMuchAsFits(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset, final int limit) throws InvalidUtf16StringException
+	{
+		int index = fromIndex;
+		int position = offset;
+		while (index < toIndex)
+		{
+			final int asciiEndIndex = min(endOfAsciiRun(value, index, toIndex), index + limit - position);
+			if (asciiEndIndex != index)
+			{
+				copyAscii(value, index, asciiEndIndex, destination, position);
+				position += asciiEndIndex - index;
+				index = asciiEndIndex;
+				if (index == toIndex)
+				{
+					break;
+				}
+			}
+
+			final char character = value.charAt(index);
+			if (character < OneByteLimit)
+			{
+				return encoded(index, position);
+			}
+
+			if (character < TwoByteLimit)
+			{
+				if (limit - position < 2)
+				{
+					return encoded(index, position);
+				}
+				destination[position++] = (byte) (0xC0 | (character >>> 6));
+				destination[position++] = (byte) (0x80 | (character & 0x3F));
+				index++;
+			}
+			else if (isSurrogate(character))
+			{
+				final int codePoint = supplementaryCodePoint(value, index, toIndex, character);
+				if (limit - position < 4)
+				{
+					return encoded(index, position);
+				}
+				destination[position++] = (byte) (0xF0 | (codePoint >>> 18));
+				destination[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+				destination[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+				destination[position++] = (byte) (0x80 | (codePoint & 0x3F));
+				index += CodePointUser.HighSurrogateIncrement;
+			}
+			else
+			{
+				if (limit - position < 3)
+				{
+					return encoded(index, position);
+				}
+				destination[position++] = (byte) (0xE0 | (character >>> 12));
+				destination[position++] = (byte) (0x80 | ((character >>> 6) & 0x3F));
+				destination[position++] = (byte) (0x80 | (character & 0x3F));
+				index++;
+			}
+		}
+		return encoded(index, position);
+	}
+
+	// As length(), but never failing: each lone surrogate counts as replacementLength bytes, zero to skip it
+	static int lenientLength(@NotNull final CharSequence value, final int fromIndex, final int toIndex, final int replacementLength)
+	{
+		int index = endOfAsciiRun(value, fromIndex, toIndex);
+		int length = index - fromIndex;
+		while (index < toIndex)
+		{
+			final char character = value.charAt(index);
+			if (isSurrogate(character))
+			{
+				if (codePointOrMalformed(value, index, toIndex, character) == Malformed)
+				{
+					length += replacementLength;
+					index++;
+				}
+				else
+				{
+					length += 4;
+					index += CodePointUser.HighSurrogateIncrement;
+				}
+			}
+			else
+			{
+				length += 1 + ((OneByteLimit - 1 - character) >>> 31) + ((TwoByteLimit - 1 - character) >>> 31);
+				index++;
+			}
+		}
+		return length;
+	}
+
+	// Lone surrogates are skipped if replacement is null, or else replaced by its bytes; destination must have the room lenientLength() gives
+	static <X extends Exception> int encodeLeniently(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset, @Nullable final byte[] replacement, @NotNull final MalformedInputUser<X> malformedInputUser) throws X
+	{
+		int index = fromIndex;
+		int position = offset;
+		while (index < toIndex)
+		{
+			final int asciiEndIndex = endOfAsciiRun(value, index, toIndex);
+			if (asciiEndIndex != index)
+			{
+				copyAscii(value, index, asciiEndIndex, destination, position);
+				position += asciiEndIndex - index;
+				index = asciiEndIndex;
+				if (index == toIndex)
+				{
+					break;
+				}
+			}
+
+			final char character = value.charAt(index);
+			if (character < TwoByteLimit)
+			{
+				destination[position++] = (byte) (0xC0 | (character >>> 6));
+				destination[position++] = (byte) (0x80 | (character & 0x3F));
+				index++;
+				continue;
+			}
+
+			if (isSurrogate(character))
+			{
+				final int supplementaryCodePoint = codePointOrMalformed(value, index, toIndex, character);
+				if (supplementaryCodePoint != Malformed)
+				{
+					destination[position++] = (byte) (0xF0 | (supplementaryCodePoint >>> 18));
+					destination[position++] = (byte) (0x80 | ((supplementaryCodePoint >>> 12) & 0x3F));
+					destination[position++] = (byte) (0x80 | ((supplementaryCodePoint >>> 6) & 0x3F));
+					destination[position++] = (byte) (0x80 | (supplementaryCodePoint & 0x3F));
+					index += CodePointUser.HighSurrogateIncrement;
+					continue;
+				}
+
+				malformedInputUser.useMalformedInput(index, 1);
+				if (replacement != null)
+				{
+					arraycopy(replacement, 0, destination, position, replacement.length);
+					position += replacement.length;
+				}
+				index++;
+				continue;
+			}
+
+			destination[position++] = (byte) (0xE0 | (character >>> 12));
+			destination[position++] = (byte) (0x80 | ((character >>> 6) & 0x3F));
+			destination[position++] = (byte) (0x80 | (character & 0x3F));
+			index++;
+		}
+		return position;
+	}
+
+	// destination's position is only moved once encoding has finished, so that an InvalidUtf16StringException leaves it where it was for heap and direct buffers alike
+	static int encode(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final ByteBuffer destination) throws InvalidUtf16StringException
+	{
+		final int startPosition = destination.position();
+		final int position;
+		final long encoded;
+		if (destination.hasArray())
+		{
+			final int arrayOffset = destination.arrayOffset();
+			encoded = encodeAsMuchAsFits(value, fromIndex, toIndex, destination.array(), arrayOffset + startPosition, arrayOffset + destination.limit());
+			position = encodedPosition(encoded) - arrayOffset;
+		}
+		else
+		{
+			encoded = encodeAsMuchAsFits(value, fromIndex, toIndex, destination, startPosition, destination.limit());
+			position = encodedPosition(encoded);
+		}
+		destination.position(position);
+		final int index = encodedIndex(encoded);
+		return index == toIndex ? position - startPosition : ~index;
+	}
+
+	// As encodeAsMuchAsFits() for a byte[], but using absolute puts so that destination's position is untouched
+	private static long encodeAsMuchAsFits(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final ByteBuffer destination, final int offset, final int limit) throws InvalidUtf16StringException
+	{
+		int index = fromIndex;
+		int position = offset;
+		final boolean isLittleEndian = destination.order() == LITTLE_ENDIAN;
+		while (index < toIndex)
+		{
+			final int asciiEndIndex = min(endOfAsciiRun(value, index, toIndex), index + limit - position);
+			while (asciiEndIndex - index >= Long.BYTES)
+			{
+				destination.putLong(position, isLittleEndian ? packAsciiLittleEndian(value, index) : packAsciiBigEndian(value, index));
+				position += Long.BYTES;
+				index += Long.BYTES;
+			}
+			while (index < asciiEndIndex)
+			{
+				destination.put(position++, (byte) value.charAt(index++));
+			}
+			if (index == toIndex)
+			{
+				break;
+			}
+
+			final char character = value.charAt(index);
+			if (character < OneByteLimit)
+			{
+				return encoded(index, position);
+			}
+
+			if (character < TwoByteLimit)
+			{
+				if (limit - position < 2)
+				{
+					return encoded(index, position);
+				}
+				destination.put(position++, (byte) (0xC0 | (character >>> 6)));
+				destination.put(position++, (byte) (0x80 | (character & 0x3F)));
+				index++;
+			}
+			else if (isSurrogate(character))
+			{
+				final int codePoint = supplementaryCodePoint(value, index, toIndex, character);
+				if (limit - position < 4)
+				{
+					return encoded(index, position);
+				}
+				destination.put(position++, (byte) (0xF0 | (codePoint >>> 18)));
+				destination.put(position++, (byte) (0x80 | ((codePoint >>> 12) & 0x3F)));
+				destination.put(position++, (byte) (0x80 | ((codePoint >>> 6) & 0x3F)));
+				destination.put(position++, (byte) (0x80 | (codePoint & 0x3F)));
+				index += CodePointUser.HighSurrogateIncrement;
+			}
+			else
+			{
+				if (limit - position < 3)
+				{
+					return encoded(index, position);
+				}
+				destination.put(position++, (byte) (0xE0 | (character >>> 12)));
+				destination.put(position++, (byte) (0x80 | ((character >>> 6) & 0x3F)));
+				destination.put(position++, (byte) (0x80 | (character & 0x3F)));
+				index++;
+			}
+		}
+		return encoded(index, position);
+	}
+
+	// Eight ASCII chars as one long, so that a direct buffer is written with one bounds check rather than eight
+	private static long packAsciiLittleEndian(@NotNull final CharSequence value, final int index)
+	{
+		return value.charAt(index) | (long) value.charAt(index + 1) << 8 | (long) value.charAt(index + 2) << 16 | (long) value.charAt(index + 3) << 24 | (long) value.charAt(index + 4) << 32 | (long) value.charAt(index + 5) << 40 | (long) value.charAt(index + 6) << 48 | (long) value.charAt(index + 7) << 56;
+	}
+
+	private static long packAsciiBigEndian(@NotNull final CharSequence value, final int index)
+	{
+		return (long) value.charAt(index) << 56 | (long) value.charAt(index + 1) << 48 | (long) value.charAt(index + 2) << 40 | (long) value.charAt(index + 3) << 32 | (long) value.charAt(index + 4) << 24 | (long) value.charAt(index + 5) << 16 | (long) value.charAt(index + 6) << 8 | value.charAt(index + 7);
+	}
+
+	// Eight chars are ORed together so that a single comparison classifies the whole block, the same trick as SWAR over a long of packed bytes
+	static int endOfAsciiRun(@NotNull final CharSequence value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		final int lastBlockIndex = toIndex - AsciiBlockSize;
+		while (index <= lastBlockIndex)
+		{
+			final int block = value.charAt(index) | value.charAt(index + 1) | value.charAt(index + 2) | value.charAt(index + 3) | value.charAt(index + 4) | value.charAt(index + 5) | value.charAt(index + 6) | value.charAt(index + 7);
+			if (block >= OneByteLimit)
+			{
+				break;
+			}
+			index += AsciiBlockSize;
+		}
+
+		while (index < toIndex && value.charAt(index) < OneByteLimit)
+		{
+			index++;
+		}
+		return index;
+	}
+
+	@SuppressWarnings("deprecation")
+	static void copyAscii(@NotNull final CharSequence value, final int fromIndex, final int toIndex, @NotNull final byte[] destination, final int offset)
+	{
+		if (value instanceof String)
+		{
+			// Deliberately uses the deprecated low-byte copy: it is exact for ASCII and is a plain array copy on compact strings
+			((String) value).getBytes(fromIndex, toIndex, destination, offset);
+			return;
+		}
+
+		int position = offset;
+		for (int index = fromIndex; index < toIndex; index++)
+		{
+			destination[position++] = (byte) value.charAt(index);
+		}
+	}
+
+	static int length(@NotNull final CharSequence value, final int fromIndex, final int toIndex) throws InvalidUtf16StringException
+	{
+		int index = endOfAsciiRun(value, fromIndex, toIndex);
+		int length = index - fromIndex;
+		while (index < toIndex)
+		{
+			final char character = value.charAt(index);
+			if (isSurrogate(character))
+			{
+				supplementaryCodePoint(value, index, toIndex, character);
+				length += 4;
+				index += CodePointUser.HighSurrogateIncrement;
+			}
+			else
+			{
+				// 1, 2 or 3 bytes: each subtraction's sign bit adds one for every bucket boundary the char lies above
+				length += 1 + ((OneByteLimit - 1 - character) >>> 31) + ((TwoByteLimit - 1 - character) >>> 31);
+				index++;
+			}
+		}
+		return length;
+	}
+
+	// Only call once encoding from fromIndex has thrown InvalidUtf16StringException, so that there is always a lone surrogate to find
+	static int loneSurrogateIndex(@NotNull final CharSequence value, final int fromIndex, final int toIndex)
+	{
+		int index = fromIndex;
+		while (index < toIndex)
+		{
+			final char character = value.charAt(index);
+			if (isHighSurrogate(character) && index + 1 < toIndex && isLowSurrogate(value.charAt(index + 1)))
+			{
+				index += CodePointUser.HighSurrogateIncrement;
+			}
+			else if (isSurrogate(character))
+			{
+				return index;
+			}
+			else
+			{
+				index++;
+			}
+		}
+		throw new IllegalStateException(StringConstants.Should_be_impossible);
+	}
+
+	// Returns Malformed rather than throwing if highSurrogate is lone, ie is a low surrogate, or is not followed by a low surrogate
+	static int codePointOrMalformed(@NotNull final CharSequence value, final int index, final int toIndex, final char highSurrogate)
+	{
+		if (isLowSurrogate(highSurrogate))
+		{
+			return Malformed;
+		}
+
+		final int lowIndex = index + 1;
+		if (lowIndex == toIndex)
+		{
+			return Malformed;
+		}
+
+		final char lowSurrogate = value.charAt(lowIndex);
+		return isLowSurrogate(lowSurrogate) ? toCodePoint(highSurrogate, lowSurrogate) : Malformed;
+	}
+
+	static int supplementaryCodePoint(@NotNull final CharSequence value, final int index, final int toIndex, final char highSurrogate) throws InvalidUtf16StringException
+	{
+		if (isLowSurrogate(highSurrogate))
+		{
+			throw lowSurrogateWithoutPrecedingHighSurrogate(index);
+		}
+
+		final int lowIndex = index + 1;
+		if (lowIndex == toIndex)
+		{
+			throw missingFinalLowSurrogate(index);
+		}
+
+		final char lowSurrogate = value.charAt(lowIndex);
+		if (!isLowSurrogate(lowSurrogate))
+		{
+			throw highSurrogateWithoutFollowingLowSurrogate(index);
+		}
+		return toCodePoint(highSurrogate, lowSurrogate);
+	}
+}
@@ -0,0 +1,129 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.Utf8Decoder.firstInvalidIndex;
+import static java.lang.Character.isHighSurrogate;
+import static java.lang.Math.min;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.*;
+
+public final class Utf8Files
+{
+	public static final long Valid = -1L;
+
+	private static final int WindowSize = 64 * 1024 * 1024;
+	private static final int MaximumUtf8SequenceLength = 4;
+
+	private Utf8Files()
+	{
+	}
+
+	public static void validateUtf8(@NotNull final Path file) throws IOException, InvalidUtf8StringException
+	{
+		final long offset = firstInvalidUtf8Offset(file);
+		if (offset != Valid)
+		{
+			throw new InvalidUtf8StringException(format("File '%1$s' contains an invalid, overlong, surrogate or truncated UTF-8 sequence at offset '%2$s'", file, offset));
+		}
+	}
+
+	public static long firstInvalidUtf8Offset(@NotNull final Path file) throws IOException
+	{
+		try (final FileChannel fileChannel = FileChannel.open(file, READ))
+		{
+			final long size = fileChannel.size();
+			long windowOffset = 0L;
+			while (windowOffset < size)
+			{
+				final long windowSize = min(WindowSize, size - windowOffset);
+				final boolean isLastWindow = windowOffset + windowSize == size;
+				final MappedByteBuffer window = fileChannel.map(READ_ONLY, windowOffset, windowSize);
+				final int invalidIndex = firstInvalidIndex(window);
+				if (invalidIndex == Utf8Decoder.Valid)
+				{
+					windowOffset += windowSize;
+					continue;
+				}
+
+				// A sequence cut short by the end of the window is retried at the start of the next one
+				final boolean mayBeTruncatedByWindow = !isLastWindow && windowSize - invalidIndex < MaximumUtf8SequenceLength;
+				if (!mayBeTruncatedByWindow)
+				{
+					return windowOffset + invalidIndex;
+				}
+				windowOffset += invalidIndex;
+			}
+			return Valid;
+		}
+	}
+
+	// Each mapped window of utf8File is forced to storage, so the transcoding is durable once this returns
+	public static void transcodeUtf16ToUtf8(@NotNull final Path utf16File, @NotNull final ByteOrder byteOrder, @NotNull final Path utf8File) throws IOException, InvalidUtf16StringException
+	{
+		try (final FileChannel source = FileChannel.open(utf16File, READ); final FileChannel destination = FileChannel.open(utf8File, READ, WRITE, CREATE, TRUNCATE_EXISTING))
+		{
+			final long size = source.size();
+			if ((size & 1L) != 0L)
+			{
+				throw new InvalidUtf16StringException(format("File '%1$s' has an odd length '%2$s' so can not be UTF-16", utf16File, size));
+			}
+
+			long windowOffset = 0L;
+			long destinationOffset = 0L;
+			while (windowOffset < size)
+			{
+				final long windowSize = min(WindowSize, size - windowOffset);
+				final boolean isLastWindow = windowOffset + windowSize == size;
+				final CharBuffer window = source.map(READ_ONLY, windowOffset, windowSize).order(byteOrder).asCharBuffer();
+
+				final int windowLength = window.length();
+				final int toIndex = !isLastWindow && isHighSurrogate(window.charAt(windowLength - 1)) ? windowLength - 1 : windowLength;
+				try
+				{
+					final int utf8Length = Utf8Encoder.length(window, 0, toIndex);
+					final MappedByteBuffer output = destination.map(READ_WRITE, destinationOffset, utf8Length);
+					Utf8Encoder.encode(window, 0, toIndex, output);
+					output.force();
+					destinationOffset += utf8Length;
+				}
+				catch (final InvalidUtf16StringException e)
+				{
+					throw new InvalidUtf16StringException(format("File '%1$s' contains a lone surrogate at byte offset '%2$s'", utf16File, windowOffset + ((long) Utf8Encoder.loneSurrogateIndex(window, 0, toIndex) << 1)), e);
+				}
+				windowOffset += (long) toIndex << 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package com.stormmq.string;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static com.stormmq.string.ByteArrayUser.outputStreamByteArrayUser;
+import static com.stormmq.string.ByteArrayUser.writableByteChannelByteArrayUser;
+import static com.stormmq.string.Formatting.format;
+import static com.stormmq.string.Utf8Encoder.*;
+import static java.lang.Character.isHighSurrogate;
+import static java.lang.Character.isLowSurrogate;
+import static java.lang.Character.toCodePoint;
+
+public final class Utf8StreamEncoder<X extends Exception>
+{
+	public static final int DefaultBufferSize = 8192;
+	private static final int MinimumBufferSize = 4;
+	private static final char NoPendingHighSurrogate = 0;
+
+	public static void transcode(@NotNull final Reader reader, @NotNull final OutputStream outputStream) throws IOException, InvalidUtf16StringException
+	{
+		transcode(reader, new Utf8StreamEncoder<>(outputStreamByteArrayUser(outputStream), DefaultBufferSize));
+		outputStream.flush();
+	}
+
+	public static void transcode(@NotNull final Reader reader, @NotNull final WritableByteChannel writableByteChannel) throws IOException, InvalidUtf16StringException
+	{
+		transcode(reader, new Utf8StreamEncoder<>(writableByteChannelByteArrayUser(writableByteChannel), DefaultBufferSize));
+	}
+
+	private static void transcode(@NotNull final Reader reader, @NotNull final Utf8StreamEncoder<IOException> utf8StreamEncoder) throws IOException, InvalidUtf16StringException
+	{
+		final CharBuffer chunk = CharBuffer.allocate(DefaultBufferSize);
+		final char[] chunkArray = chunk.array();
+		int read;
+		while ((read = reader.read(chunkArray, 0, DefaultBufferSize)) != -1)
+		{
+			chunk.limit(read).position(0);
+			utf8StreamEncoder.feed(chunk);
+		}
+		utf8StreamEncoder.finish();
+	}
+
+	@NotNull private final ByteArrayUser<X> byteArrayUser;
+	@NotNull private final byte[] buffer;
+	private int position;
+	private char pendingHighSurrogate;
+	private long charactersFed;
+
+	public Utf8StreamEncoder(@NotNull final ByteArrayUser<X> byteArrayUser, final int bufferSize)
+	{
+		if (bufferSize < MinimumBufferSize)
+		{
+			throw new IllegalArgumentException(format("bufferSize '%1$s' must be at least '%2$s' so that any code point fits", bufferSize, MinimumBufferSize));
+		}
+		this.byteArrayUser = byteArrayUser;
+		buffer = new byte[bufferSize];
+		position = 0;
+		pendingHighSurrogate = NoPendingHighSurrogate;
+		charactersFed = 0L;
+	}
+
+	// Consumes the buffer from its position to its limit
+	public void feed(@NotNull final CharBuffer chunk) throws InvalidUtf16StringException, X
+	{
+		feed((CharSequence) chunk);
+		chunk.position(chunk.limit());
+	}
+
+	public void feed(@NotNull final CharSequence chunk) throws InvalidUtf16StringException, X
+	{
+		final int length = chunk.length();
+		if (length == 0)
+		{
+			return;
+		}
+
+		int index = 0;
+		if (pendingHighSurrogate != NoPendingHighSurrogate)
+		{
+			final char lowSurrogate = chunk.charAt(0);
+			if (!isLowSurrogate(lowSurrogate))
+			{
+				throw new InvalidUtf16StringException(format("Stream contains a high surrogate without a following low surrogate at stream index '%1$s'", charactersFed - 1));
+			}
+			writeSupplementaryCodePoint(toCodePoint(pendingHighSurrogate, lowSurrogate));
+			pendingHighSurrogate = NoPendingHighSurrogate;
+			index = 1;
+		}
+
+		final char lastCharacter = chunk.charAt(length - 1);
+		final boolean endsWithHighSurrogate = isHighSurrogate(lastCharacter);
+		final int toIndex = endsWithHighSurrogate ? length - 1 : length;
+		try
+		{
+			while (index < toIndex)
+			{
+				final long encoded = encodeAsMuchAsFits(chunk, index, toIndex, buffer, position, buffer.length);
+				index = encodedIndex(encoded);
+				position = encodedPosition(encoded);
+				if (index != toIndex)
+				{
+					flush();
+				}
+			}
+		}
+		catch (final InvalidUtf16StringException e)
+		{
+			throw new InvalidUtf16StringException(format("Stream contains a lone surrogate at stream index '%1$s'", charactersFed + loneSurrogateIndex(chunk, index, toIndex)), e);
+		}
+
+		if (endsWithHighSurrogate)
+		{
+			pendingHighSurrogate = lastCharacter;
+		}
+		charactersFed += length;
+	}
+
+	public void flush() throws X
+	{
+		if (position == 0)
+		{
+			return;
+		}
+		byteArrayUser.useBytes(buffer, 0, position);
+		position = 0;
+	}
+
+	public void finish() throws InvalidUtf16StringException, X
+	{
+		if (pendingHighSurrogate != NoPendingHighSurrogate)
+		{
+			pendingHighSurrogate = NoPendingHighSurrogate;
+			throw new InvalidUtf16StringException(format("Stream contains a missing final low surrogate after stream index '%1$s'", charactersFed - 1));
+		}
+		flush();
+	}
+
+	@SuppressWarnings({"MagicNumber", "NumericCastThatLosesPrecision"})
+	private void writeSupplementaryCodePoint(final int codePoint) throws X
+	{
+		if (buffer.length - position < 4)
+		{
+			flush();
+		}
+		buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+		buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+		buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+		buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+	}
+}
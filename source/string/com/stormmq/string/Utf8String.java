@@ -0,0 +1,273 @@
+// The MIT License (MIT)
+//
+// Copyright © 2016, Raphael Cohn <raphael.cohn@stormmq.com>
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package com.stormmq.string;
+
+import org.jetbrains.annotations.*;
+
+import java.nio.ByteBuffer;
+
+import static com.stormmq.string.InvalidUtf8StringException.invalidSequence;
+import static com.stormmq.string.Utf8Decoder.Valid;
+import static com.stormmq.string.Utf8Decoder.firstInvalidIndex;
+import static java.lang.Math.min;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOfRange;
+
+// An immutable string held as validated UTF-8, so that it can be written without encoding; for ASCII this is a byte per char, even on JVMs without compact Strings
+// When every byte is ASCII, charAt() reads the bytes directly; otherwise the first charAt() or subSequence() decodes, and keeps, a String
+// equals() and compareTo() work on the bytes; the order is that of code points, which differs from String.compareTo() for supplementary characters
+public final class Utf8String implements CharSequence, Comparable<Utf8String>
+{
+	private static final int HashMultiplier = 31;
+	private static final int ContinuationMask = 0xC0;
+	private static final int Continuation = 0x80;
+	private static final int FourByteLeadMask = 0xF8;
+	private static final int FourByteLead = 0xF0;
+
+	@NotNull
+	public static Utf8String utf8String(@NotNull @NonNls final CharSequence value) throws InvalidUtf16StringException
+	{
+		return new Utf8String(Utf8ByteUser.encodeToUtf8ByteArray(value), value.length());
+	}
+
+	// The bytes are copied
+	@NotNull
+	public static Utf8String utf8String(@NotNull final byte[] utf8, final int offset, final int length) throws InvalidUtf8StringException
+	{
+		final int invalidIndex = firstInvalidIndex(utf8, offset, length);
+		if (invalidIndex != Valid)
+		{
+			throw invalidSequence(invalidIndex);
+		}
+		final byte[] copy = copyOfRange(utf8, offset, offset + length);
+		return new Utf8String(copy, utf16Length(copy));
+	}
+
+	// The bytes from value's position to its limit are copied; value's position is not changed
+	@NotNull
+	public static Utf8String utf8String(@NotNull final ByteBuffer value) throws InvalidUtf8StringException
+	{
+		final int invalidIndex = firstInvalidIndex(value);
+		if (invalidIndex != Valid)
+		{
+			throw invalidSequence(invalidIndex);
+		}
+		final byte[] copy = new byte[value.remaining()];
+		value.duplicate().get(copy);
+		return new Utf8String(copy, utf16Length(copy));
+	}
+
+	// Every byte that is not a continuation is one char, and every four byte sequence, which is a supplementary code point, one more
+	private static int utf16Length(@NotNull final byte[] utf8)
+	{
+		int length = 0;
+		for (final byte unit : utf8)
+		{
+			if ((unit & ContinuationMask) != Continuation)
+			{
+				length++;
+			}
+			if ((unit & FourByteLeadMask) == FourByteLead)
+			{
+				length++;
+			}
+		}
+		return length;
+	}
+
+	@NotNull private final byte[] utf8;
+	private final int length;
+
+	// Benignly racy, as for String; zero means not yet computed
+	private int hash;
+
+	// Benignly racy, as String is immutable; only ever set if not ASCII
+	@Nullable private String decoded;
+
+	private Utf8String(@NotNull final byte[] utf8, final int length)
+	{
+		this.utf8 = utf8;
+		this.length = length;
+	}
+
+	public boolean isAscii()
+	{
+		return length == utf8.length;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(final int index)
+	{
+		if (isAscii())
+		{
+			if (index < 0 || index >= length)
+			{
+				throw new StringIndexOutOfBoundsException(index);
+			}
+			return (char) utf8[index];
+		}
+		return decoded().charAt(index);
+	}
+
+	@NotNull
+	@Override
+	public CharSequence subSequence(final int start, final int end)
+	{
+		if (isAscii())
+		{
+			if (start < 0 || end > length || start > end)
+			{
+				throw new StringIndexOutOfBoundsException(end - start);
+			}
+			return new Utf8String(copyOfRange(utf8, start, end), end - start);
+		}
+		return decoded().subSequence(start, end);
+	}
+
+	@NotNull
+	private String decoded()
+	{
+		@Nullable final String decoded = this.decoded;
+		if (decoded == null)
+		{
+			final String string = new String(utf8, UTF_8);
+			this.decoded = string;
+			return string;
+		}
+		return decoded;
+	}
+
+	// Creates a new String each time unless one has already been decoded; ASCII is a plain copy, as ISO-8859-1 maps each byte to the char of the same value
+	@NotNull
+	@Override
+	public String toString()
+	{
+		@Nullable final String decoded = this.decoded;
+		if (decoded != null)
+		{
+			return decoded;
+		}
+		return new String(utf8, isAscii() ? ISO_8859_1 : UTF_8);
+	}
+
+	public int utf8Length()
+	{
+		return utf8.length;
+	}
+
+	// A read-only view of the bytes, with position zero and limit utf8Length()
+	@NotNull
+	public ByteBuffer asByteBuffer()
+	{
+		return wrap(utf8).asReadOnlyBuffer();
+	}
+
+	// Puts all the bytes, advancing destination's position
+	public void writeTo(@NotNull final ByteBuffer destination)
+	{
+		destination.put(utf8);
+	}
+
+	// Returns the offset after the last byte written
+	public int writeTo(@NotNull final byte[] destination, final int offset)
+	{
+		System.arraycopy(utf8, 0, destination, offset, utf8.length);
+		return offset + utf8.length;
+	}
+
+	// byteArrayUser must not retain or modify the bytes
+	public <X extends Exception> void useBytes(@NotNull final ByteArrayUser<X> byteArrayUser) throws X
+	{
+		byteArrayUser.useBytes(utf8, 0, utf8.length);
+	}
+
+	@Override
+	public boolean equals(@Nullable final Object o)
+	{
+		if (this == o)
+		{
+			return true;
+		}
+		if (o == null || getClass() != o.getClass())
+		{
+			return false;
+		}
+
+		final Utf8String that = (Utf8String) o;
+		final byte[] thoseBytes = that.utf8;
+		final int utf8Length = utf8.length;
+		if (utf8Length != thoseBytes.length || hashCode() != that.hashCode())
+		{
+			return false;
+		}
+		for (int index = 0; index < utf8Length; index++)
+		{
+			if (utf8[index] != thoseBytes[index])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Of the bytes, so not the same as toString().hashCode()
+	@Override
+	public int hashCode()
+	{
+		int hash = this.hash;
+		if (hash == 0)
+		{
+			for (final byte unit : utf8)
+			{
+				hash = HashMultiplier * hash + unit;
+			}
+			this.hash = hash;
+		}
+		return hash;
+	}
+
+	// Unsigned byte order, which for UTF-8 is code point order
+	@SuppressWarnings("MagicNumber")
+	@Override
+	public int compareTo(@NotNull final Utf8String o)
+	{
+		final byte[] thoseBytes = o.utf8;
+		final int minimumLength = min(utf8.length, thoseBytes.length);
+		for (int index = 0; index < minimumLength; index++)
+		{
+			final int difference = (utf8[index] & 0xFF) - (thoseBytes[index] & 0xFF);
+			if (difference != 0)
+			{
+				return difference;
+			}
+		}
+		return utf8.length - thoseBytes.length;
+	}
+}